@@ -0,0 +1,70 @@
+/* AUTO-GENERATED FILE.  DO NOT MODIFY.
+ *
+ * This class was automatically generated by IconCatalogGenerator
+ * from res/values/icon_categories.xml, the icon string-arrays and
+ * the drawable folders. It should not be modified by hand.
+ */
+
+package com.theNemos.shadowPack.catalog;
+
+import com.theNemos.shadowPack.R;
+
+public final class IconTables {
+
+    public static final String[] CATEGORY_KEYS = { "latest", "system", "play", "games", "misc", };
+
+    public static final int[] LATEST = {
+        R.drawable.icon,
+    };
+
+    public static final int[] SYSTEM = {
+        R.drawable.system_browser,
+        R.drawable.system_gallery,
+    };
+
+    public static final int[] PLAY = {
+        R.drawable.apps_actionlauncherpro,
+        R.drawable.apps_novalauncher,
+        R.drawable.apps_apexlauncher,
+        R.drawable.apps_adwex,
+        R.drawable.apps_aviate,
+        R.drawable.apps_facebook,
+        R.drawable.apps_github,
+        R.drawable.apps_golauncher,
+        R.drawable.apps_googlemail,
+        R.drawable.apps_googleplaystore,
+        R.drawable.apps_googleplus,
+        R.drawable.apps_hololauncher,
+        R.drawable.apps_iconrequest,
+        R.drawable.apps_minilauncher,
+        R.drawable.apps_nextlauncher,
+        R.drawable.apps_rootzwiki,
+        R.drawable.apps_smartlauncher,
+        R.drawable.apps_twitter,
+        R.drawable.apps_uccw,
+        R.drawable.apps_xda,
+        R.drawable.apps_zooperwidget,
+    };
+
+    public static final int[] GAMES = {
+        R.drawable.games_templerun,
+    };
+
+    public static final int[] MISC = {
+        R.drawable.misc_appdrawer_icsics,
+    };
+
+    /** Every icon in the icon_pack array, as offered to launcher icon pickers. */
+    public static final int[] PACK = {
+        R.drawable.icon,
+        R.drawable.apps_actionlauncherpro,
+        R.drawable.apps_novalauncher,
+        R.drawable.apps_apexlauncher,
+        R.drawable.apps_adwex,
+    };
+
+    public static final int[][] CATEGORIES = { LATEST, SYSTEM, PLAY, GAMES, MISC, };
+
+    private IconTables() {
+    }
+}
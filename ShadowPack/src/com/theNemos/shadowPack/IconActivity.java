@@ -21,6 +21,7 @@ import java.util.Locale;
 
 import android.content.Intent;
 import android.graphics.drawable.ColorDrawable;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
 import android.support.v4.app.Fragment;
@@ -29,26 +30,49 @@ import android.support.v4.app.FragmentManager;
 import android.support.v4.app.FragmentPagerAdapter;
 import android.support.v4.app.ShareCompat;
 import android.support.v4.view.ViewPager;
+import android.util.SparseArray;
 import android.util.TypedValue;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.GridView;
+import android.widget.SearchView;
 import android.widget.ShareActionProvider;
 import com.theNemos.shadowPack.*;
+import com.theNemos.shadowPack.bitmap.IconLoader;
+import com.theNemos.shadowPack.catalog.IconCatalog;
+import com.theNemos.shadowPack.catalog.IconSearchIndex;
 import com.theNemos.shadowPack.fragments.*;
 import com.theNemos.shadowPack.iconFragment.*;
+import com.theNemos.shadowPack.picker.IconPicker;
 
 
 
 public class IconActivity extends FragmentActivity{
 
+	//How long the pager has to rest on a page before the neighbouring pages are decoded
+	private static final long PREFETCH_DELAY = 500;
+	//How long the query has to rest before it is searched, so a burst of keystrokes searches once
+	private static final long SEARCH_DELAY = 200;
+
 	private final Handler handler = new Handler();
 
 	private ViewPager pager;
 	private IconPagerAdapter adapter;
 	private ShareActionProvider mShareActionProvider;
 	private Intent mShareIntent;
+	private final IconViewPool mViewPool = new IconViewPool();
+	private GridView mSearchResults;
+	private IconSearchIndex mSearchIndex;
+	private String mPendingQuery;
+	private IconCatalog.Callback mSearchIndexCallback;
+	private AsyncTask<Void, Void, IconSearchIndex> mSearchIndexTask;
+	private AsyncTask<Void, Void, int[]> mSearchTask;
+	private boolean mPicked;
 
-	//This activity is what displays the icon fragments (the icon categories) see iconfragment for the tabs themselves
+	//This activity is what displays the icon categories, see IconCategoryFragment for the pages themselves
 	   @Override
 	    public void onCreate(Bundle savedInstanceState) {
 
@@ -60,11 +84,12 @@ public class IconActivity extends FragmentActivity{
 			mShareIntent.putExtra(Intent.EXTRA_TEXT, "From me to you, this text is new.");
 
 	        
-			ViewPager pager = (ViewPager) findViewById(R.id.pager);
+			pager = (ViewPager) findViewById(R.id.pager);
 		
 			adapter = new IconPagerAdapter(getSupportFragmentManager());
 
 			pager.setAdapter(adapter);
+			pager.setOnPageChangeListener(adapter);
 			
 
 			final int pageMargin = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 4, getResources()
@@ -73,13 +98,138 @@ public class IconActivity extends FragmentActivity{
 
 //			tabs.setViewPager(pager);
 
+			mSearchResults = (GridView) findViewById(R.id.icon_search_results);
+			IconGridAdapter.configure(mSearchResults);
+			mSearchResults.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+				@Override
+				public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+					onIconClick((Integer) parent.getItemAtPosition(position));
+				}
+			});
+			loadSearchIndex();
+
 	    }
+
+	//The search index covers every category, it is built once in the background and then kept for the process
+	private void loadSearchIndex() {
+		mSearchIndex = IconSearchIndex.peek();
+		if (mSearchIndex != null) return;
+		mSearchIndexCallback = new IconCatalog.Callback() {
+			@Override
+			public void onCatalogReady(final IconCatalog catalog) {
+				mSearchIndexCallback = null;
+				mSearchIndexTask = new AsyncTask<Void, Void, IconSearchIndex>() {
+					@Override
+					protected IconSearchIndex doInBackground(Void... params) {
+						return IconSearchIndex.get(getApplicationContext(), catalog);
+					}
+
+					@Override
+					protected void onPostExecute(IconSearchIndex index) {
+						mSearchIndexTask = null;
+						mSearchIndex = index;
+						if (mPendingQuery != null) showSearchResults(mPendingQuery, true);
+					}
+				}.execute();
+			}
+
+			@Override
+			public void onCatalogFailed() {
+				//Searching again starts another load
+				mSearchIndexCallback = null;
+			}
+		};
+		IconCatalog.load(this, mSearchIndexCallback);
+	}
+
+	//Taps on an icon, in a category page or in the search results. Only a launcher picking an icon gets a result,
+	//browsing the pack does nothing on tap
+	public void onIconClick(int resId) {
+		//The result is decoded in the background before the activity finishes, a second tap must not deliver again
+		if (!IconPicker.isPickRequest(getIntent()) || mPicked || isFinishing()) return;
+		mPicked = true;
+		IconPicker.deliver(this, resId);
+	}
+
+	//Typing only searches once the query rests for SEARCH_DELAY, submitting searches right away
+	private void showSearchResults(String query, boolean now) {
+		mPendingQuery = query;
+		handler.removeCallbacks(mSearch);
+		if (query.trim().length() > 0 && mSearchIndex == null) {
+			if (mSearchIndexCallback == null && mSearchIndexTask == null) loadSearchIndex();
+			return;
+		}
+		if (query.trim().length() == 0) {
+			if (mSearchTask != null) mSearchTask.cancel(false);
+			mSearchTask = null;
+			setSearchResults(null);
+			return;
+		}
+		if (now) {
+			mSearch.run();
+		} else {
+			handler.postDelayed(mSearch, SEARCH_DELAY);
+		}
+	}
+
+	//Matches the pending query in the background, a result that comes back after the query changed is dropped
+	private final Runnable mSearch = new Runnable() {
+		@Override
+		public void run() {
+			if (mSearchTask != null) mSearchTask.cancel(false);
+			final IconSearchIndex index = mSearchIndex;
+			final String query = mPendingQuery;
+			mSearchTask = new AsyncTask<Void, Void, int[]>() {
+				@Override
+				protected int[] doInBackground(Void... params) {
+					return index.search(query);
+				}
+
+				@Override
+				protected void onPostExecute(int[] icons) {
+					if (mSearchTask == this) mSearchTask = null;
+					if (query.equals(mPendingQuery)) setSearchResults(icons);
+				}
+			}.execute();
+		}
+	};
+
+	//Null hides the results
+	private void setSearchResults(int[] icons) {
+		if (mSearchResults.getAdapter() != null) {
+			mViewPool.recycle(mSearchResults);
+		}
+		if (icons == null) {
+			mSearchResults.setVisibility(View.GONE);
+			mSearchResults.setAdapter(null);
+			return;
+		}
+		// Only the matching icons are handed to the grid, so only they are ever decoded
+		mSearchResults.setAdapter(new IconGridAdapter(this, icons, mViewPool));
+		mSearchResults.setVisibility(View.VISIBLE);
+	}
 	
 
 
 	public boolean onCreateOptionsMenu(Menu menu) {
 	    // Inflate the menu; this adds items to the action bar if it is present.
+	    getMenuInflater().inflate(R.menu.icon_search, menu);
 	    getMenuInflater().inflate(R.menu.share_menu, menu);
+	    SearchView searchView = (SearchView) menu.findItem(R.id.menu_item_search).getActionView();
+	    searchView.setQueryHint(getString(R.string.icon_search));
+	    searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+			@Override
+			public boolean onQueryTextChange(String newText) {
+				showSearchResults(newText, false);
+				return true;
+			}
+
+			@Override
+			public boolean onQueryTextSubmit(String query) {
+				showSearchResults(query, true);
+				return true;
+			}
+		});
 	    MenuItem item = menu.findItem(R.id.menu_item_share);
 	    mShareActionProvider = (ShareActionProvider) item.getActionProvider();
 	    // Create the share Intent
@@ -94,59 +244,138 @@ public class IconActivity extends FragmentActivity{
 	}
 
 
-	public class IconPagerAdapter extends FragmentPagerAdapter {
+	public IconViewPool getViewPool() {
+		return mViewPool;
+	}
+
+	//Called by a category page once its grid is up, so the pages next to it can be warmed
+	public void onPageReady() {
+		adapter.schedulePrefetch();
+	}
+
+	@Override
+	protected void onResume() {
+		super.onResume();
+		adapter.schedulePrefetch();
+	}
+
+	@Override
+	protected void onPause() {
+		adapter.cancelPrefetch();
+		super.onPause();
+	}
+
+	@Override
+	protected void onDestroy() {
+		if (mSearchIndexCallback != null) IconCatalog.cancel(mSearchIndexCallback);
+		//The index is kept for the process by IconSearchIndex itself, only the delivery to this activity is dropped
+		if (mSearchIndexTask != null) mSearchIndexTask.cancel(false);
+		handler.removeCallbacks(mSearch);
+		if (mSearchTask != null) mSearchTask.cancel(false);
+		mViewPool.clear();
+		super.onDestroy();
+	}
+
+
+	//Pages come from res/values/icon_categories.xml, one IconCategoryFragment per category.
+	//While the pager rests on a page, the first screen of icons of the pages either side of it is decoded at low
+	//priority, so they are drawn as soon as they are swiped in
+	public class IconPagerAdapter extends FragmentPagerAdapter implements ViewPager.OnPageChangeListener {
 
-		private final int[] TITLES = { R.string.icon1, R.string.icon2, R.string.icon3, R.string.icon4, R.string.icon5 };
+		private final String[] mKeys;
+		private final String[] mTitles;
+		private final SparseArray<IconCategoryFragment> mPages = new SparseArray<IconCategoryFragment>();
+		private final Runnable mPrefetch = new Runnable() {
+			@Override
+			public void run() {
+				prefetchNeighbours();
+			}
+		};
 
 		public IconPagerAdapter(FragmentManager fm) {
 			super(fm);
+			mKeys = getResources().getStringArray(R.array.icon_category_keys);
+			mTitles = getResources().getStringArray(R.array.icon_category_titles);
 		}
 
 		@Override
 		public CharSequence getPageTitle(int position) {
 			Locale l = Locale.getDefault();
-			switch (position) {
-			case 0:
-				return getString(R.string.icon1).toUpperCase(l);
-			case 1:
-				return getString(R.string.icon2).toUpperCase(l);
-			case 2:
-				return getString(R.string.icon3).toUpperCase(l);
-			case 3:
-				return getString(R.string.icon4).toUpperCase(l);
-			case 4:
-				return getString(R.string.icon5).toUpperCase(l);	
-			}
-			return null;
+			return mTitles[position].toUpperCase(l);
 		}
 
 		@Override
 		public Fragment getItem(int position) {
-			Fragment f = new Fragment();
-			switch(position){
-			case 0:
-				f= new IconFragmentLatest();	
-				break;
-			case 1:
-				f= new IconFragmentSystem();
-				break;
-			case 2:
-				f= new IconFragmentPlay();	
-				break;
-			case 3:
-				f= new IconFragmentGames();	
-				break;
-			case 4:
-				f= new IconFragmentMisc();	
-				break;	
-			}
-			return f;
+			return IconCategoryFragment.newInstance(mKeys[position]);
 		}
 		
 		@Override
 		public int getCount() {
-			return TITLES.length;
+			return mKeys.length;
 		}	
+
+		@Override
+		public Object instantiateItem(ViewGroup container, int position) {
+			Object page = super.instantiateItem(container, position);
+			mPages.put(position, (IconCategoryFragment) page);
+			return page;
+		}
+
+		@Override
+		public void destroyItem(ViewGroup container, int position, Object object) {
+			mPages.remove(position);
+			super.destroyItem(container, position, object);
+		}
+
+		@Override
+		public void onPageScrollStateChanged(int state) {
+			if (state == ViewPager.SCROLL_STATE_IDLE) {
+				schedulePrefetch();
+			} else {
+				cancelPrefetch();
+			}
+		}
+
+		@Override
+		public void onPageScrolled(int position, float positionOffset, int positionOffsetPixels) {
+		}
+
+		@Override
+		public void onPageSelected(int position) {
+		}
+
+		void schedulePrefetch() {
+			handler.removeCallbacks(mPrefetch);
+			handler.postDelayed(mPrefetch, PREFETCH_DELAY);
+		}
+
+		void cancelPrefetch() {
+			handler.removeCallbacks(mPrefetch);
+			IconLoader.getInstance(IconActivity.this).cancelPrefetches();
+		}
+
+		//Decodes as many icons of each neighbouring page as the current page shows, at its cell size
+		private void prefetchNeighbours() {
+			IconCatalog catalog = IconCatalog.peek();
+			IconCategoryFragment current = mPages.get(pager.getCurrentItem());
+			GridView grid = current != null ? current.getGridView() : null;
+			if (catalog == null || grid == null || !(grid.getAdapter() instanceof IconGridAdapter)) return;
+			int cellSize = ((IconGridAdapter) grid.getAdapter()).getCellSize();
+			int count = grid.getChildCount();
+			if (cellSize <= 0 || count == 0) return;
+
+			IconLoader loader = IconLoader.getInstance(IconActivity.this);
+			loader.cancelPrefetches();
+			for (int position = pager.getCurrentItem() - 1; position <= pager.getCurrentItem() + 1; position += 2) {
+				if (position < 0 || position >= mKeys.length) continue;
+				int category = catalog.indexOfCategory(mKeys[position]);
+				if (category < 0) continue;
+				int[] icons = catalog.getIcons(category);
+				for (int i = 0; i < Math.min(count, icons.length); i++) {
+					loader.prefetch(catalog.getAtlas(), category, icons[i], cellSize);
+				}
+			}
+		}
 		
 	}
 
@@ -0,0 +1,193 @@
+package com.theNemos.shadowPack;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.app.Activity;
+import android.content.ActivityNotFoundException;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.util.Log;
+import android.util.SparseBooleanArray;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.ListView;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.theNemos.shadowPack.request.AppCoverage;
+import com.theNemos.shadowPack.request.IconCoverageScanner;
+import com.theNemos.shadowPack.request.IconRequestArchive;
+
+public class IconRequest extends Activity implements IconCoverageScanner.Listener {
+
+	private static final String TAG = "IconRequest";
+
+	private IconCoverageScanner mScanner;
+	private ArchiveTask mArchiveTask;
+	private final List<AppCoverage> mApps = new ArrayList<AppCoverage>();
+	private TextView mStatus;
+	private ProgressBar mProgress;
+	private ListView mList;
+
+	//Lists the installed apps the pack does not theme, and mails the icons of the ones picked as a zip
+	@Override
+	public void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		setContentView(R.layout.activity_request);
+		mStatus = (TextView) findViewById(R.id.request_status);
+		mProgress = (ProgressBar) findViewById(R.id.request_progress);
+		mList = (ListView) findViewById(R.id.request_list);
+		mList.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+			@Override
+			public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+				showSelection();
+			}
+		});
+
+		mScanner = new IconCoverageScanner(this);
+		mScanner.start(this);
+	}
+
+	@Override
+	protected void onDestroy() {
+		mScanner.cancel();
+		if (mArchiveTask != null) mArchiveTask.cancel(true);
+		super.onDestroy();
+	}
+
+	@Override
+	public boolean onCreateOptionsMenu(Menu menu) {
+		getMenuInflater().inflate(R.menu.icon_request, menu);
+		return true;
+	}
+
+	@Override
+	public boolean onPrepareOptionsMenu(Menu menu) {
+		menu.findItem(R.id.menu_item_send_request)
+				.setEnabled(mArchiveTask == null && mList.getCheckedItemCount() > 0);
+		return super.onPrepareOptionsMenu(menu);
+	}
+
+	@Override
+	public boolean onOptionsItemSelected(MenuItem item) {
+		if (item.getItemId() == R.id.menu_item_send_request) {
+			sendRequest();
+			return true;
+		}
+		return super.onOptionsItemSelected(item);
+	}
+
+	@Override
+	public void onScanProgress(int done, int total) {
+		mProgress.setMax(total);
+		mProgress.setProgress(done);
+	}
+
+	@Override
+	public void onScanFinished(List<AppCoverage> apps) {
+		List<CharSequence> labels = new ArrayList<CharSequence>();
+		for (AppCoverage app : apps) {
+			if (app.getStatus() == AppCoverage.MATCHED) continue;
+			mApps.add(app);
+			labels.add(app.getStatus() == AppCoverage.PARTIAL
+					? getString(R.string.request_partial, app.getLabel()) : app.getLabel());
+		}
+		mList.setAdapter(new ArrayAdapter<CharSequence>(this,
+				android.R.layout.simple_list_item_multiple_choice, labels));
+		// Everything the pack misses is picked to begin with, unticking is quicker than ticking
+		for (int i = 0; i < mApps.size(); i++) {
+			mList.setItemChecked(i, true);
+		}
+		mProgress.setVisibility(View.GONE);
+		showSelection();
+	}
+
+	@Override
+	public void onScanFailed(Exception e) {
+		Toast.makeText(this, R.string.request_failed, Toast.LENGTH_SHORT).show();
+		finish();
+	}
+
+	private void showSelection() {
+		if (mApps.isEmpty()) {
+			mStatus.setText(R.string.request_none);
+		} else {
+			mStatus.setText(getString(R.string.request_selected, mList.getCheckedItemCount(), mApps.size()));
+		}
+		invalidateOptionsMenu();
+	}
+
+	private void sendRequest() {
+		List<AppCoverage> selected = new ArrayList<AppCoverage>();
+		SparseBooleanArray checked = mList.getCheckedItemPositions();
+		for (int i = 0; i < mApps.size(); i++) {
+			if (checked.get(i)) selected.add(mApps.get(i));
+		}
+		if (selected.isEmpty()) return;
+
+		mStatus.setText(R.string.request_building);
+		mProgress.setIndeterminate(true);
+		mProgress.setVisibility(View.VISIBLE);
+		mList.setEnabled(false);
+		mArchiveTask = new ArchiveTask(selected.size());
+		mArchiveTask.execute(selected);
+		invalidateOptionsMenu();
+	}
+
+	private void onArchiveWritten(Uri archive, int count) {
+		mArchiveTask = null;
+		mProgress.setVisibility(View.GONE);
+		mList.setEnabled(true);
+		showSelection();
+		if (archive == null) {
+			Toast.makeText(this, R.string.request_failed, Toast.LENGTH_SHORT).show();
+			return;
+		}
+
+		Intent email = new Intent(Intent.ACTION_SEND);
+		email.setType("application/zip");
+		email.putExtra(Intent.EXTRA_EMAIL, new String[] { getString(R.string.request_email) });
+		email.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.request_subject));
+		email.putExtra(Intent.EXTRA_TEXT, getString(R.string.request_body, count));
+		email.putExtra(Intent.EXTRA_STREAM, archive);
+		email.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+		try {
+			startActivity(Intent.createChooser(email, getString(R.string.request_send)));
+		} catch (ActivityNotFoundException e) {
+			Toast.makeText(this, R.string.request_failed, Toast.LENGTH_SHORT).show();
+		}
+	}
+
+	private class ArchiveTask extends AsyncTask<List<AppCoverage>, Void, Uri> {
+
+		private final int mCount;
+
+		ArchiveTask(int count) {
+			mCount = count;
+		}
+
+		@Override
+		protected Uri doInBackground(List<AppCoverage>... apps) {
+			try {
+				return new IconRequestArchive(IconRequest.this).write(apps[0]);
+			} catch (InterruptedException e) {
+				return null;
+			} catch (Exception e) {
+				Log.e(TAG, "Could not write the icon request", e);
+				return null;
+			}
+		}
+
+		@Override
+		protected void onPostExecute(Uri archive) {
+			onArchiveWritten(archive, mCount);
+		}
+	}
+}
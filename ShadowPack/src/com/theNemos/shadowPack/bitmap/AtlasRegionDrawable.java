@@ -0,0 +1,57 @@
+package com.theNemos.shadowPack.bitmap;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+/**
+ * Draws one icon out of an atlas bitmap, scaled to its bounds. Every cell of a page shares the same bitmap, so
+ * nothing is decoded or allocated per icon.
+ */
+final class AtlasRegionDrawable extends Drawable {
+
+    private final Bitmap mBitmap;
+    private final Rect mSource;
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    AtlasRegionDrawable(Bitmap bitmap, Rect source) {
+        mBitmap = bitmap;
+        mSource = source;
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        canvas.drawBitmap(mBitmap, mSource, getBounds(), mPaint);
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return mSource.width();
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return mSource.height();
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        mPaint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter cf) {
+        mPaint.setColorFilter(cf);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+}
@@ -0,0 +1,75 @@
+package com.theNemos.shadowPack.bitmap;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+
+import android.graphics.Bitmap;
+
+/**
+ * Mutable bitmaps nothing draws any more, bucketed by allocation size, for decodes to write into through
+ * BitmapFactory.Options#inBitmap instead of allocating. Once a page of icons has been scrolled through, the
+ * bitmaps of the cells leaving the screen are the ones the cells coming in are decoded into.
+ * <p/>
+ * Decoding into a bitmap of another size needs KitKat, which is where {@link IconBitmapCache} uses the pool.
+ * It is safe to use from any thread.
+ */
+final class BitmapPool {
+
+    /**
+     * How much bigger than asked for a bitmap may be and still be handed out, so small icons do not pin big
+     * bitmaps.
+     */
+    private static final int MAX_OVERSIZE = 2;
+
+    private final int mMaxBytes;
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> mBuckets = new TreeMap<Integer, ArrayDeque<Bitmap>>();
+    private int mBytes;
+
+    BitmapPool(int maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Adds a bitmap no view or cache holds any more. It is dropped if the pool is full.
+     */
+    synchronized void put(Bitmap bitmap) {
+        if (!bitmap.isMutable() || bitmap.isRecycled()) return;
+        int bytes = bitmap.getAllocationByteCount();
+        if (mBytes + bytes > mMaxBytes) return;
+        ArrayDeque<Bitmap> bucket = mBuckets.get(bytes);
+        if (bucket == null) {
+            bucket = new ArrayDeque<Bitmap>();
+            mBuckets.put(bytes, bucket);
+        }
+        bucket.push(bitmap);
+        mBytes += bytes;
+    }
+
+    /**
+     * Takes a particular bitmap back out of the pool, e.g. because a view is about to draw it again.
+     *
+     * @return False if it is not in the pool, because it has been handed out to be decoded into.
+     */
+    synchronized boolean remove(Bitmap bitmap) {
+        int bytes = bitmap.getAllocationByteCount();
+        ArrayDeque<Bitmap> bucket = mBuckets.get(bytes);
+        if (bucket == null || !bucket.remove(bitmap)) return false;
+        if (bucket.isEmpty()) mBuckets.remove(bytes);
+        mBytes -= bytes;
+        return true;
+    }
+
+    /**
+     * Takes a bitmap with room for at least the given number of bytes, or returns null if there is none.
+     */
+    synchronized Bitmap get(int bytes) {
+        Map.Entry<Integer, ArrayDeque<Bitmap>> entry = mBuckets.ceilingEntry(bytes);
+        if (entry == null || entry.getKey() > bytes * MAX_OVERSIZE) return null;
+        ArrayDeque<Bitmap> bucket = entry.getValue();
+        Bitmap bitmap = bucket.pop();
+        if (bucket.isEmpty()) mBuckets.remove(entry.getKey());
+        mBytes -= entry.getKey();
+        return bitmap;
+    }
+}
@@ -0,0 +1,464 @@
+package com.theNemos.shadowPack.bitmap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+import android.util.TypedValue;
+
+import com.theNemos.shadowPack.catalog.IconAtlas;
+import com.theNemos.shadowPack.catalog.IconIndex;
+
+/**
+ * The app-wide memory cache of decoded icon bitmaps, keyed by drawable resource id and the size the icon was
+ * decoded for. The icon pages, the tab thumbnails and the adw picker all share it, so an icon shown in two places
+ * at the same size is decoded once, and swiping back to a page does not decode its icons again.
+ * <p/>
+ * The budget is an eighth of the app's memory class and the least recently used bitmaps are evicted by byte size.
+ * Behind it sits an {@link IconDiskCache} of the icons that had to be scaled down, so those are only decoded at
+ * full resolution once per device.
+ * <p/>
+ * Bitmaps bound to views by {@link IconLoader} are counted. Once one is both evicted and no longer drawn by any
+ * view it goes to a {@link BitmapPool}, and later decodes are written into it rather than into a new allocation.
+ * Bitmaps handed out by {@link #get} are never reused, and neither are the icon atlases (see IconAtlas), which
+ * share the budget but are keyed apart from drawables. It is safe to use from any thread.
+ */
+public final class IconBitmapCache {
+
+    /**
+     * The size to pass to cache an icon at the resolution it is packaged at.
+     */
+    public static final int FULL_SIZE = 0;
+
+    private static final String TAG = "IconBitmapCache";
+    private static final String DISK_CACHE_DIR = "icons";
+    private static final long DISK_CACHE_BYTES = 8 * 1024 * 1024;
+
+    private static IconBitmapCache sInstance;
+
+    private final Context mContext;
+    private final LruCache<Long, Bitmap> mCache;
+    private final BitmapPool mPool;
+    private final IdentityHashMap<Bitmap, Usage> mUsage = new IdentityHashMap<Bitmap, Usage>();
+    private final int mVersionCode;
+    private final Object mAtlasLock = new Object();
+    private IconDiskCache mDiskCache;
+    private boolean mDiskCacheFailed;
+
+    private IconBitmapCache(Context context, int maxBytes) {
+        mContext = context;
+        mVersionCode = readVersionCode(context);
+        mCache = new LruCache<Long, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(Long key, Bitmap value) {
+                return value.getByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, Long key, Bitmap oldValue, Bitmap newValue) {
+                if (oldValue != newValue) onUncached(oldValue);
+            }
+        };
+        mPool = new BitmapPool(maxBytes / 4);
+    }
+
+    public static synchronized IconBitmapCache getInstance(Context context) {
+        if (sInstance == null) {
+            ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+            sInstance = new IconBitmapCache(context.getApplicationContext(), am.getMemoryClass() * 1024 * 1024 / 8);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Gets the bitmap for a drawable resource, decoding and caching it first if it is not cached yet. Icons larger
+     * than the size are decoded straight down to fit it, so no bitmap is bigger than the pixels it is drawn on.
+     * <p/>
+     * The bitmap is never reused for another icon, so it can be kept for as long as needed.
+     *
+     * @param size The size in pixels of the view the icon is shown in, or {@link #FULL_SIZE}.
+     * @return The bitmap, or null if the resource is not a bitmap.
+     */
+    public Bitmap get(Resources res, int resId, int size) {
+        Bitmap bitmap = retain(res, resId, size);
+        if (bitmap != null) {
+            synchronized (mUsage) {
+                Usage usage = mUsage.get(bitmap);
+                usage.pinned = true;
+                usage.displays--;
+                recycleIfUnused(bitmap, usage);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Like {@link #get}, but the bitmap counts as drawn by one more view until it is passed to {@link #release}.
+     */
+    Bitmap retain(Resources res, int resId, int size) {
+        Bitmap bitmap = retainCached(resId, size);
+        if (bitmap != null) return bitmap;
+        bitmap = decode(res, resId, size);
+        if (bitmap == null) return null;
+        synchronized (mUsage) {
+            Usage usage = new Usage();
+            usage.cached = true;
+            usage.displays = 1;
+            mUsage.put(bitmap, usage);
+        }
+        mCache.put(key(resId, size), bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Like {@link #retain}, but returns null rather than decoding if the bitmap is not cached.
+     */
+    Bitmap retainCached(int resId, int size) {
+        Bitmap bitmap = mCache.get(key(resId, size));
+        if (bitmap == null) return null;
+        synchronized (mUsage) {
+            Usage usage = mUsage.get(bitmap);
+            if (usage == null) {
+                // Evicted since the lookup. If it was pooled it is only usable while no decode has taken it yet
+                if (isPooling() && !mPool.remove(bitmap)) return null;
+                usage = new Usage();
+                mUsage.put(bitmap, usage);
+            }
+            usage.displays++;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Gets whether an icon is cached at a size, without retaining it.
+     */
+    boolean isCached(int resId, int size) {
+        return mCache.get(key(resId, size)) != null;
+    }
+
+    /**
+     * Marks a bitmap from {@link #retain} as no longer drawn by a view.
+     */
+    void release(Bitmap bitmap) {
+        synchronized (mUsage) {
+            Usage usage = mUsage.get(bitmap);
+            if (usage == null) return;
+            usage.displays--;
+            recycleIfUnused(bitmap, usage);
+        }
+    }
+
+    /**
+     * Gets one of a category's icon atlases scaled by {@link #getAtlasScale}, decoding and caching it first if it
+     * is not cached yet.
+     *
+     * @return The bitmap, or null if the atlas could not be decoded.
+     */
+    Bitmap getAtlas(int category, int atlas, int cellSize, int size) {
+        Bitmap bitmap = getAtlasCached(category, atlas, size);
+        if (bitmap != null) return bitmap;
+        // Every cell of a page asks for the same atlas at once; only the first decodes it
+        synchronized (mAtlasLock) {
+            bitmap = getAtlasCached(category, atlas, size);
+            if (bitmap != null) return bitmap;
+            bitmap = decodeAtlas(IconAtlas.getAtlasAsset(category, atlas), cellSize, size);
+            if (bitmap == null) return null;
+            synchronized (mUsage) {
+                Usage usage = new Usage();
+                usage.cached = true;
+                usage.pinned = true;
+                mUsage.put(bitmap, usage);
+            }
+            mCache.put(atlasKey(category, atlas, size), bitmap);
+            return bitmap;
+        }
+    }
+
+    /**
+     * Like {@link #getAtlas}, but returns null rather than decoding if the atlas is not cached.
+     */
+    Bitmap getAtlasCached(int category, int atlas, int size) {
+        return mCache.get(atlasKey(category, atlas, size));
+    }
+
+    /**
+     * Gets how much an atlas is scaled down when decoded for cells of a size. Icons are never scaled up, views do
+     * that when drawing them.
+     */
+    static float getAtlasScale(int cellSize, int size) {
+        if (cellSize <= size) return 1;
+        int sampleSize = getSampleSize(cellSize, size);
+        return (float) size / (cellSize / sampleSize) / sampleSize;
+    }
+
+    private void onUncached(Bitmap bitmap) {
+        synchronized (mUsage) {
+            Usage usage = mUsage.get(bitmap);
+            if (usage == null) return;
+            usage.cached = false;
+            recycleIfUnused(bitmap, usage);
+        }
+    }
+
+    private void recycleIfUnused(Bitmap bitmap, Usage usage) {
+        if (usage.cached || usage.displays > 0) return;
+        mUsage.remove(bitmap);
+        if (!usage.pinned && isPooling()) mPool.put(bitmap);
+    }
+
+    /**
+     * Before KitKat a bitmap can only be decoded into if it has exactly the decoded size and no scaling is done,
+     * which the icons never meet, so there is no pooling there.
+     */
+    private static boolean isPooling() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+    }
+
+    private Bitmap decode(Resources res, int resId, int size) {
+        Bitmap.Config config = isOpaque(res, resId) ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        if (size == FULL_SIZE) {
+            BitmapFactory.Options opts = new BitmapFactory.Options();
+            opts.inPreferredConfig = config;
+            return BitmapFactory.decodeResource(res, resId, opts);
+        }
+
+        int density = res.getDisplayMetrics().densityDpi;
+        int contentHash = contentHash(mContext, resId);
+        IconDiskCache diskCache = getDiskCache();
+        if (diskCache != null) {
+            File file = diskCache.get(resId, size, density, mVersionCode, contentHash);
+            // The file can be evicted by another thread in between, then it is decoded from the APK as usual
+            Bitmap bitmap = null;
+            if (file != null) {
+                BitmapFactory.Options opts = new BitmapFactory.Options();
+                opts.inPreferredConfig = config;
+                reuseBitmap(opts, size, size);
+                try {
+                    bitmap = BitmapFactory.decodeFile(file.getPath(), opts);
+                } catch (IllegalArgumentException e) {
+                    opts.inBitmap = null;
+                    bitmap = BitmapFactory.decodeFile(file.getPath(), opts);
+                }
+            }
+            if (bitmap != null) {
+                bitmap.setDensity(density);
+                return bitmap;
+            }
+        }
+
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inPreferredConfig = config;
+        int largest = setUpScaledDecode(res, resId, size, opts);
+        if (largest <= 0) return BitmapFactory.decodeResource(res, resId);
+
+        int width = opts.outWidth;
+        int height = opts.outHeight;
+        if (largest > size) {
+            // Rounded up, a pooled bitmap only has to be at least as big as the result
+            width = (int) Math.ceil((double) width * size / largest) + 1;
+            height = (int) Math.ceil((double) height * size / largest) + 1;
+        }
+        reuseBitmap(opts, width, height);
+        Bitmap bitmap;
+        try {
+            bitmap = decodeRaw(res, resId, opts);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap did not fit after all
+            opts.inBitmap = null;
+            bitmap = decodeRaw(res, resId, opts);
+        }
+        if (bitmap == null) return null;
+        bitmap.setDensity(density);
+        if (largest > size && diskCache != null) {
+            diskCache.put(resId, size, density, mVersionCode, contentHash, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Decodes a drawable to fit a size, as for the cache, but without going through the caches or the pool. For
+     * images that leave the app.
+     *
+     * @return The bitmap, or null if the resource is not a bitmap.
+     */
+    static Bitmap decodeUncached(Resources res, int resId, int size) {
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        if (setUpScaledDecode(res, resId, size, opts) <= 0) return null;
+        return decodeRaw(res, resId, opts);
+    }
+
+    /**
+     * Reads the bounds of a drawable and sets up options that decode it straight down to fit a size. Drawables no
+     * larger than the size are decoded as they are.
+     *
+     * @return The largest side of the drawable, or 0 if it could not be read.
+     */
+    private static int setUpScaledDecode(Resources res, int resId, int size, BitmapFactory.Options opts) {
+        opts.inJustDecodeBounds = true;
+        decodeRaw(res, resId, opts);
+        opts.inJustDecodeBounds = false;
+        int largest = Math.max(opts.outWidth, opts.outHeight);
+        if (largest > size) {
+            // Subsample by powers of two as far as the size allows, then let the decoder scale the rest of the way
+            // so the bitmap comes out at the size it is drawn at and never larger
+            opts.inSampleSize = getSampleSize(largest, size);
+            opts.inScaled = true;
+            opts.inDensity = largest / opts.inSampleSize;
+            opts.inTargetDensity = size;
+        } else {
+            opts.inScaled = false;
+        }
+        return Math.max(largest, 0);
+    }
+
+    private Bitmap decodeAtlas(String asset, int cellSize, int size) {
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        if (cellSize > size) {
+            // The same steps as for single icons, with the cell standing in for the icon
+            opts.inSampleSize = getSampleSize(cellSize, size);
+            opts.inScaled = true;
+            opts.inDensity = cellSize / opts.inSampleSize;
+            opts.inTargetDensity = size;
+        } else {
+            opts.inScaled = false;
+        }
+        try {
+            InputStream in = mContext.getAssets().open(asset);
+            try {
+                return BitmapFactory.decodeStream(in, null, opts);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read " + asset, e);
+            return null;
+        }
+    }
+
+    private static int getSampleSize(int largest, int size) {
+        int sampleSize = 1;
+        while (largest / (sampleSize * 2) >= size) sampleSize *= 2;
+        return sampleSize;
+    }
+
+    /**
+     * Lets a decode write into a pooled bitmap with room for the given size, and makes the result mutable so it can
+     * be pooled in turn.
+     */
+    private void reuseBitmap(BitmapFactory.Options opts, int width, int height) {
+        if (!isPooling()) return;
+        opts.inMutable = true;
+        opts.inBitmap = mPool.get(width * height * (opts.inPreferredConfig == Bitmap.Config.RGB_565 ? 2 : 4));
+    }
+
+    /**
+     * Gets whether a drawable has no transparent pixels, so it can be decoded as RGB_565 at half the memory. The
+     * build records this for pack icons; other drawables are opaque only if they are JPEGs.
+     */
+    private static boolean isOpaque(Resources res, int resId) {
+        IconIndex index = getIndex();
+        int position = index != null ? index.indexOf(resId) : -1;
+        if (position >= 0) return index.isOpaque(position);
+        TypedValue value = new TypedValue();
+        res.getValue(resId, value, true);
+        String file = value.string != null ? value.string.toString().toLowerCase(Locale.US) : "";
+        return file.endsWith(".jpg") || file.endsWith(".jpeg");
+    }
+
+    /**
+     * Decodes the raw file of a drawable. Unlike BitmapFactory#decodeResource, no density scaling is applied
+     * unless the options ask for it, so bounds come back in the file's own pixels.
+     */
+    private static Bitmap decodeRaw(Resources res, int resId, BitmapFactory.Options opts) {
+        InputStream in = res.openRawResource(resId);
+        try {
+            return BitmapFactory.decodeStream(in, null, opts);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // The bitmap has already been read
+            }
+        }
+    }
+
+    private synchronized IconDiskCache getDiskCache() {
+        if (mDiskCache == null && !mDiskCacheFailed) {
+            try {
+                mDiskCache = IconDiskCache.open(new File(mContext.getCacheDir(), DISK_CACHE_DIR), DISK_CACHE_BYTES);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not open the disk cache, icons will be scaled every time", e);
+                mDiskCacheFailed = true;
+            }
+        }
+        return mDiskCache;
+    }
+
+    /**
+     * Gets the content hash of a pack icon, mapping the icon index first if nothing has yet, or 0 for other
+     * drawables and if the index cannot be opened.
+     */
+    static int contentHash(Context context, int resId) {
+        IconIndex index;
+        try {
+            index = IconIndex.getInstance(context);
+        } catch (IOException e) {
+            return 0;
+        }
+        int position = index.indexOf(resId);
+        return position >= 0 ? index.getContentHash(position) : 0;
+    }
+
+    /**
+     * Gets the icon index, or null until the catalog or iconsProvider has mapped it.
+     */
+    private static IconIndex getIndex() {
+        return IconIndex.peek();
+    }
+
+    static int readVersionCode(Context context) {
+        try {
+            return context.getPackageManager().getPackageInfo(context.getPackageName(), 0).versionCode;
+        } catch (PackageManager.NameNotFoundException e) {
+            return 0;
+        }
+    }
+
+    private static Long key(int resId, int size) {
+        return ((long) resId << 32) | (size & 0xffffffffL);
+    }
+
+    /**
+     * Drawable keys never have the top bit of the size set, so atlases cannot collide with them.
+     */
+    private static Long atlasKey(int category, int atlas, int size) {
+        return ((long) (category << 16 | atlas) << 32) | 0x80000000L | size;
+    }
+
+    private static class Usage {
+
+        /**
+         * Whether the memory cache holds the bitmap.
+         */
+        boolean cached;
+        /**
+         * How many views draw the bitmap.
+         */
+        int displays;
+        /**
+         * Whether the bitmap was handed out by {@link #get}, which may keep it forever.
+         */
+        boolean pinned;
+    }
+}
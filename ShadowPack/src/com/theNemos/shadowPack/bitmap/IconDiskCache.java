@@ -0,0 +1,311 @@
+package com.theNemos.shadowPack.bitmap;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+/**
+ * A size-limited disk cache of downscaled icons. Icons are packaged at xxhdpi only, so on every other density each
+ * one would be decoded at full resolution and scaled every time it is shown; with this cache that happens once per
+ * device and the small thumbnail is read back after that.
+ * <p/>
+ * Entries are keyed by resource id, pixel size and screen density. A journal lists them in least recently used
+ * order together with the version code that wrote them and the content hash of their source icon (see
+ * IconIndex#getContentHash), so after an update only the thumbnails of icons that were redrawn are dropped. The
+ * least recently used entries are deleted once the cache grows past its size limit.
+ * <p/>
+ * The same cache also holds the icons iconsProvider serves at a requested size, in their own directory and with
+ * their own file suffix, see {@link IconVariants}. All methods are safe to call from any thread, but do disk I/O.
+ */
+final class IconDiskCache {
+
+    private static final String TAG = "IconDiskCache";
+    private static final String JOURNAL = "journal";
+    private static final String JOURNAL_HEADER = "shadowPack.IconDiskCache 1";
+    private static final String PUT = "PUT";
+    private static final String READ = "READ";
+    private static final String DEL = "DEL";
+    private static final int MAX_REDUNDANT_LINES = 512;
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+    private final String mSuffix;
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+    private long mBytes;
+    private int mRedundantLines;
+    private Writer mJournal;
+
+    private IconDiskCache(File directory, long maxBytes, String suffix) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+        mSuffix = suffix;
+    }
+
+    /**
+     * Opens a cache of PNG thumbnails in a directory, replaying its journal. The directory is created if needed.
+     */
+    static IconDiskCache open(File directory, long maxBytes) throws IOException {
+        return open(directory, maxBytes, ".png");
+    }
+
+    /**
+     * Opens a cache whose files end in a suffix other than .png, for images stored with {@link #put(int, int, int,
+     * int, int, byte[])}.
+     */
+    static IconDiskCache open(File directory, long maxBytes, String suffix) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) throw new IOException("Could not create " + directory);
+        IconDiskCache cache = new IconDiskCache(directory, maxBytes, suffix);
+        synchronized (cache) {
+            cache.readJournal();
+            cache.dropStaleFiles();
+            cache.rewriteJournal();
+            cache.trimToSize();
+        }
+        return cache;
+    }
+
+    /**
+     * Gets the file of a cached thumbnail, or null if there is none still valid.
+     *
+     * @param contentHash The content hash of the icon now packaged, or 0 if it is unknown, in which case entries
+     *                    written by another version code are not trusted. Entries written by this version code
+     *                    always are, the icon cannot have changed without the app being updated.
+     */
+    synchronized File get(int resId, int size, int density, int versionCode, int contentHash) {
+        String key = key(resId, size, density);
+        Entry entry = mEntries.get(key);
+        if (entry == null) return null;
+        if (entry.versionCode == versionCode) {
+            if (entry.contentHash == 0 && contentHash != 0) {
+                // Written before the hash was known, record it so the entry can outlive the next update
+                entry.contentHash = contentHash;
+                appendJournal(PUT, entry);
+            } else {
+                appendJournal(READ, entry);
+            }
+        } else if (contentHash != 0 && entry.contentHash == contentHash) {
+            // Written by an older version, but the icon has not changed since
+            entry.versionCode = versionCode;
+            appendJournal(PUT, entry);
+        } else {
+            remove(key);
+            return null;
+        }
+        compactJournal();
+        return file(key);
+    }
+
+    /**
+     * Writes a thumbnail to the cache, replacing any older one for the same key.
+     */
+    void put(int resId, int size, int density, int versionCode, int contentHash, Bitmap bitmap) {
+        put(resId, size, density, versionCode, contentHash, bitmap, null);
+    }
+
+    /**
+     * Writes an already encoded image to the cache, replacing any older one for the same key.
+     */
+    void put(int resId, int size, int density, int versionCode, int contentHash, byte[] encoded) {
+        put(resId, size, density, versionCode, contentHash, null, encoded);
+    }
+
+    private void put(int resId, int size, int density, int versionCode, int contentHash, Bitmap bitmap,
+                     byte[] encoded) {
+        String key = key(resId, size, density);
+        // Encode outside the lock under a name only this thread uses, then swap the finished file in
+        File tmp = new File(mDirectory, key + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            FileOutputStream os = new FileOutputStream(tmp);
+            try {
+                if (encoded != null) {
+                    os.write(encoded);
+                } else {
+                    bitmap.compress(Bitmap.CompressFormat.PNG, 100, os);
+                }
+            } finally {
+                os.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write " + tmp, e);
+            tmp.delete();
+            return;
+        }
+
+        synchronized (this) {
+            File file = file(key);
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                return;
+            }
+            Entry old = mEntries.get(key);
+            if (old != null) mBytes -= old.length;
+            Entry entry = new Entry(key, versionCode, contentHash, file.length());
+            mEntries.put(key, entry);
+            mBytes += entry.length;
+            appendJournal(PUT, entry);
+            trimToSize();
+            compactJournal();
+        }
+    }
+
+    private void remove(String key) {
+        Entry entry = mEntries.remove(key);
+        if (entry == null) return;
+        mBytes -= entry.length;
+        file(key).delete();
+        appendJournal(DEL, entry);
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Entry>> it = mEntries.entrySet().iterator();
+        while (mBytes > mMaxBytes && it.hasNext()) {
+            Entry entry = it.next().getValue();
+            it.remove();
+            mBytes -= entry.length;
+            file(entry.key).delete();
+            appendJournal(DEL, entry);
+        }
+    }
+
+    private void readJournal() {
+        File journal = new File(mDirectory, JOURNAL);
+        if (!journal.exists()) return;
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journal), "UTF-8"));
+            try {
+                if (!JOURNAL_HEADER.equals(reader.readLine())) return;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] parts = line.split(" ");
+                    if (parts[0].equals(PUT) && parts.length == 5) {
+                        mEntries.put(parts[1], new Entry(parts[1], Integer.parseInt(parts[2]),
+                                (int) Long.parseLong(parts[3], 16), Long.parseLong(parts[4])));
+                    } else if (parts[0].equals(READ) && parts.length == 2) {
+                        mEntries.get(parts[1]);
+                    } else if (parts[0].equals(DEL) && parts.length == 2) {
+                        mEntries.remove(parts[1]);
+                    } else {
+                        // A line cut short by the process dying mid-write, everything before it still holds
+                        break;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read the journal, starting over", e);
+            mEntries.clear();
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Corrupt journal, starting over", e);
+            mEntries.clear();
+        }
+    }
+
+    /**
+     * Forgets entries whose file is gone or was cut short, and deletes files the journal does not know about, such
+     * as thumbnails that were being written when the process died.
+     */
+    private void dropStaleFiles() {
+        mBytes = 0;
+        for (Iterator<Entry> it = mEntries.values().iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            if (file(entry.key).length() != entry.length) {
+                it.remove();
+            } else {
+                mBytes += entry.length;
+            }
+        }
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                String name = f.getName();
+                if (name.endsWith(mSuffix) &&
+                        mEntries.containsKey(name.substring(0, name.length() - mSuffix.length()))) continue;
+                if (!name.equals(JOURNAL)) f.delete();
+            }
+        }
+    }
+
+    /**
+     * Replaces the journal with one holding only the live entries.
+     */
+    private void rewriteJournal() throws IOException {
+        if (mJournal != null) mJournal.close();
+        File tmp = new File(mDirectory, JOURNAL + ".tmp");
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"));
+        try {
+            writer.write(JOURNAL_HEADER + "\n");
+            for (Entry entry : mEntries.values()) {
+                writer.write(line(PUT, entry));
+            }
+        } finally {
+            writer.close();
+        }
+        if (!tmp.renameTo(new File(mDirectory, JOURNAL))) throw new IOException("Could not replace the journal");
+        mJournal = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(new File(mDirectory, JOURNAL), true), "UTF-8"));
+        mRedundantLines = 0;
+    }
+
+    private void compactJournal() {
+        if (mRedundantLines < MAX_REDUNDANT_LINES || mRedundantLines < mEntries.size()) return;
+        try {
+            rewriteJournal();
+        } catch (IOException e) {
+            Log.w(TAG, "Could not compact the journal", e);
+        }
+    }
+
+    private void appendJournal(String op, Entry entry) {
+        if (mJournal == null) return;
+        try {
+            mJournal.write(line(op, entry));
+            mJournal.flush();
+            mRedundantLines++;
+        } catch (IOException e) {
+            // The entries on disk still match the files, they are only forgotten on the next start
+            Log.w(TAG, "Could not write the journal", e);
+        }
+    }
+
+    private static String line(String op, Entry entry) {
+        if (!op.equals(PUT)) return op + " " + entry.key + "\n";
+        return PUT + " " + entry.key + " " + entry.versionCode + " " + Integer.toHexString(entry.contentHash) + " " +
+                entry.length + "\n";
+    }
+
+    private File file(String key) {
+        return new File(mDirectory, key + mSuffix);
+    }
+
+    private static String key(int resId, int size, int density) {
+        return Integer.toHexString(resId) + "_" + size + "_" + density;
+    }
+
+    private static class Entry {
+
+        final String key;
+        int versionCode;
+        int contentHash;
+        final long length;
+
+        Entry(String key, int versionCode, int contentHash, long length) {
+            this.key = key;
+            this.versionCode = versionCode;
+            this.contentHash = contentHash;
+            this.length = length;
+        }
+    }
+}
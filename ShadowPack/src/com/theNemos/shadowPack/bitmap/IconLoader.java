@@ -0,0 +1,358 @@
+package com.theNemos.shadowPack.bitmap;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.widget.ImageView;
+
+import com.theNemos.shadowPack.R;
+import com.theNemos.shadowPack.catalog.IconAtlas;
+
+/**
+ * Binds icons to image views without decoding on the main thread. A cached icon is set straight away; otherwise
+ * the view shows a placeholder while the icon is decoded on a small pool of background threads. Binding a view to
+ * another icon, or cancelling it, drops its pending decode, so cells scrolled past are never decoded.
+ * <p/>
+ * Decodes are run newest first, so the cells that just came on screen are filled before the ones flung past.
+ * The loader keeps track of the bitmap each view draws, so that once a view moves on to another icon or is
+ * recycled its old bitmap can be reused by {@link IconBitmapCache}. Pages of pack icons can be drawn out of the
+ * category's icon atlases instead, see {@link #load(ImageView, IconAtlas, int, int, int, Drawable)}.
+ * <p/>
+ * While a grid is flung it {@link #pause pauses} the loader: cells still get cached icons, but decodes are held
+ * back until it resumes, and then only those of the cells still bound are run. Icons about to scroll on screen can
+ * be decoded ahead with {@link #prefetch}, after everything a view is waiting for. Must be called on the main
+ * thread.
+ */
+public final class IconLoader {
+
+    private static final int MAX_WORKERS = 2;
+
+    private static IconLoader sInstance;
+
+    private final Resources mResources;
+    private final IconBitmapCache mCache;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ThreadPoolExecutor mExecutor;
+    private final Set<Object> mPausedBy = new HashSet<Object>();
+    private final List<Request> mDeferred = new ArrayList<Request>();
+    // Prefetches queued or running, each removes itself once it has run. Guarded by itself, as they finish on
+    // the workers
+    private final Set<Request> mPrefetches = new HashSet<Request>();
+
+    private IconLoader(Context context) {
+        mResources = context.getApplicationContext().getResources();
+        mCache = IconBitmapCache.getInstance(context);
+        int workers = Math.max(1, Math.min(MAX_WORKERS, Runtime.getRuntime().availableProcessors() - 1));
+        mExecutor = new ThreadPoolExecutor(workers, workers, 1, TimeUnit.SECONDS, new LifoQueue(),
+                new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "IconLoader #" + mCount.incrementAndGet());
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public static synchronized IconLoader getInstance(Context context) {
+        if (sInstance == null) sInstance = new IconLoader(context);
+        return sInstance;
+    }
+
+    /**
+     * Shows an icon in a view, decoding it in the background if it is not cached.
+     *
+     * @param size        The size in pixels of the view, see {@link IconBitmapCache#get}.
+     * @param placeholder Shown until the icon is decoded, may be null.
+     */
+    public void load(ImageView view, int resId, int size, Drawable placeholder) {
+        if (isPending(view, resId, size)) return;
+
+        Bitmap bitmap = mCache.retainCached(resId, size);
+        if (bitmap != null) {
+            view.setTag(R.id.icon_load_request, null);
+            show(view, bitmap, null);
+            return;
+        }
+        show(view, null, placeholder);
+        Request request = new Request(view, resId, size, null, -1, -1);
+        view.setTag(R.id.icon_load_request, request);
+        submit(request);
+    }
+
+    /**
+     * Shows an icon of a category out of the category's atlas, which is decoded once for the whole page. Icons the
+     * atlas does not have, or all of them if it cannot be decoded, are loaded one by one as by
+     * {@link #load(ImageView, int, int, Drawable)}.
+     */
+    public void load(ImageView view, IconAtlas atlas, int category, int resId, int size, Drawable placeholder) {
+        int entry = atlas.find(category, resId);
+        if (entry < 0) {
+            load(view, resId, size, placeholder);
+            return;
+        }
+        if (isPending(view, resId, size)) return;
+
+        Bitmap bitmap = mCache.getAtlasCached(category, atlas.getAtlas(entry), size);
+        if (bitmap != null) {
+            view.setTag(R.id.icon_load_request, null);
+            show(view, null, getRegion(bitmap, atlas, entry, size));
+            return;
+        }
+        show(view, null, placeholder);
+        Request request = new Request(view, resId, size, atlas, category, entry);
+        view.setTag(R.id.icon_load_request, request);
+        submit(request);
+    }
+
+    /**
+     * Decodes an icon into the cache without showing it, once every pending decode of a view has run. Does nothing
+     * while the loader is paused.
+     *
+     * @param atlas The atlas to decode the icon's page of, or null to decode the icon by itself.
+     */
+    public void prefetch(IconAtlas atlas, int category, int resId, int size) {
+        if (!mPausedBy.isEmpty()) return;
+        int entry = atlas != null ? atlas.find(category, resId) : -1;
+        if (entry >= 0) {
+            if (mCache.getAtlasCached(category, atlas.getAtlas(entry), size) != null) return;
+        } else {
+            atlas = null;
+            if (mCache.isCached(resId, size)) return;
+        }
+        Request request = new Request(null, resId, size, atlas, category, entry);
+        synchronized (mPrefetches) {
+            mPrefetches.add(request);
+        }
+        mExecutor.execute(request);
+    }
+
+    /**
+     * Drops every prefetch that has not run yet, e.g. because the grid they were for is scrolling again.
+     */
+    public void cancelPrefetches() {
+        synchronized (mPrefetches) {
+            for (Request request : mPrefetches) request.cancel();
+            mPrefetches.clear();
+        }
+    }
+
+    /**
+     * Holds back decodes until {@link #resume} is called with the same owner. The loader stays paused while any
+     * owner has it paused.
+     */
+    public void pause(Object owner) {
+        mPausedBy.add(owner);
+    }
+
+    /**
+     * Runs the decodes held back while paused, unless another owner still has the loader paused. Views bound to
+     * another icon in the meantime have already dropped theirs.
+     */
+    public void resume(Object owner) {
+        if (!mPausedBy.remove(owner) || !mPausedBy.isEmpty()) return;
+        // In the order they were bound, so the queue runs the ones bound last, those on screen, first
+        for (Request request : mDeferred) mExecutor.execute(request);
+        mDeferred.clear();
+    }
+
+    private void submit(Request request) {
+        if (mPausedBy.isEmpty()) {
+            mExecutor.execute(request);
+        } else {
+            mDeferred.add(request);
+        }
+    }
+
+    /**
+     * Gets whether a view is already waiting for an icon, and otherwise cancels what it is waiting for.
+     */
+    private boolean isPending(ImageView view, int resId, int size) {
+        Request pending = (Request) view.getTag(R.id.icon_load_request);
+        if (pending == null) return false;
+        if (pending.mResId == resId && pending.mSize == size) return true;
+        pending.cancel();
+        return false;
+    }
+
+    private static Drawable getRegion(Bitmap bitmap, IconAtlas atlas, int entry, int size) {
+        float scale = IconBitmapCache.getAtlasScale(atlas.getCellSize(), size);
+        int left = Math.round(atlas.getX(entry) * scale);
+        int top = Math.round(atlas.getY(entry) * scale);
+        int right = Math.min(bitmap.getWidth(), Math.round((atlas.getX(entry) + atlas.getWidth(entry)) * scale));
+        int bottom = Math.min(bitmap.getHeight(), Math.round((atlas.getY(entry) + atlas.getHeight(entry)) * scale));
+        return new AtlasRegionDrawable(bitmap, new Rect(left, top, right, bottom));
+    }
+
+    /**
+     * Drops the pending decode of a view, if any, and clears it so its bitmap can be reused. Call this when a view
+     * is recycled.
+     */
+    public void recycle(ImageView view) {
+        Request pending = (Request) view.getTag(R.id.icon_load_request);
+        if (pending != null) {
+            pending.cancel();
+            view.setTag(R.id.icon_load_request, null);
+        }
+        show(view, null, null);
+    }
+
+    /**
+     * Shows a bitmap or, if it is null, a drawable, and releases the bitmap the view drew before. The new image is
+     * set first so the old bitmap is never drawn once it may be reused.
+     */
+    private void show(ImageView view, Bitmap bitmap, Drawable drawable) {
+        Bitmap old = (Bitmap) view.getTag(R.id.icon_bitmap);
+        if (bitmap != null) {
+            view.setImageBitmap(bitmap);
+        } else {
+            view.setImageDrawable(drawable);
+        }
+        view.setTag(R.id.icon_bitmap, bitmap);
+        if (old != null) mCache.release(old);
+    }
+
+    private class Request implements Runnable {
+
+        final int mResId;
+        final int mSize;
+        private final WeakReference<ImageView> mView;
+        private final IconAtlas mAtlas;
+        private final int mCategory;
+        private final int mEntry;
+        private volatile boolean mCancelled;
+
+        /**
+         * @param view  The view to show the icon in, or null to only cache it.
+         * @param atlas The atlas to draw the icon from, or null to decode the icon itself.
+         */
+        Request(ImageView view, int resId, int size, IconAtlas atlas, int category, int entry) {
+            mView = view != null ? new WeakReference<ImageView>(view) : null;
+            mResId = resId;
+            mSize = size;
+            mAtlas = atlas;
+            mCategory = category;
+            mEntry = entry;
+        }
+
+        void cancel() {
+            mCancelled = true;
+            mExecutor.remove(this);
+            mDeferred.remove(this);
+        }
+
+        boolean isPrefetch() {
+            return mView == null;
+        }
+
+        @Override
+        public void run() {
+            try {
+                load();
+            } finally {
+                if (isPrefetch()) {
+                    synchronized (mPrefetches) {
+                        mPrefetches.remove(this);
+                    }
+                }
+            }
+        }
+
+        private void load() {
+            if (mCancelled) return;
+            if (mAtlas != null) {
+                final Bitmap atlas = mCache.getAtlas(mCategory, mAtlas.getAtlas(mEntry), mAtlas.getCellSize(), mSize);
+                if (atlas != null && isPrefetch()) return;
+                if (atlas != null) {
+                    mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            ImageView view = mView.get();
+                            if (mCancelled || view == null || view.getTag(R.id.icon_load_request) != Request.this) {
+                                return;
+                            }
+                            view.setTag(R.id.icon_load_request, null);
+                            show(view, null, getRegion(atlas, mAtlas, mEntry, mSize));
+                        }
+                    });
+                    return;
+                }
+                if (mCancelled) return;
+            }
+            final Bitmap bitmap = mCache.retain(mResources, mResId, mSize);
+            if (bitmap == null) {
+                // Not a bitmap file, such as an XML drawable; the view gets the drawable itself
+                if (!isPrefetch()) showDrawable();
+                return;
+            }
+            if (isPrefetch()) {
+                mCache.release(bitmap);
+                return;
+            }
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    ImageView view = mView.get();
+                    if (mCancelled || view == null || view.getTag(R.id.icon_load_request) != Request.this) {
+                        mCache.release(bitmap);
+                        return;
+                    }
+                    view.setTag(R.id.icon_load_request, null);
+                    show(view, bitmap, null);
+                }
+            });
+        }
+
+        private void showDrawable() {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    ImageView view = mView.get();
+                    if (mCancelled || view == null || view.getTag(R.id.icon_load_request) != Request.this) return;
+                    view.setTag(R.id.icon_load_request, null);
+                    try {
+                        show(view, null, mResources.getDrawable(mResId));
+                    } catch (Resources.NotFoundException e) {
+                        // Nothing to show, the placeholder stays
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * A work queue that hands out the most recently queued task first, except for prefetches, which wait behind
+     * everything else.
+     */
+    private static class LifoQueue extends LinkedBlockingDeque<Runnable> {
+
+        @Override
+        public boolean offer(Runnable r) {
+            if (r instanceof Request && ((Request) r).isPrefetch()) return offerLast(r);
+            return offerFirst(r);
+        }
+    }
+}
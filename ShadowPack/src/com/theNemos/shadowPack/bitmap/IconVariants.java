@@ -0,0 +1,343 @@
+package com.theNemos.shadowPack.bitmap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.os.ParcelFileDescriptor;
+import android.os.Process;
+import android.util.Log;
+import android.util.TypedValue;
+
+/**
+ * Serves pack icons encoded at exactly the pixel size a caller asks for, so a launcher reading them through
+ * iconsProvider decodes only the pixels it draws instead of the xxhdpi original.
+ * <p/>
+ * The first request for a size decodes and scales the icon on a small background pool and stores the encoded image
+ * in an {@link IconDiskCache}; every request is then answered with a descriptor of the cached file. Nothing is
+ * streamed through a pipe, so a caller that never reads its descriptor holds up no one but itself. The pool only
+ * queues a few encodes and turns the rest away, so a burst of cold requests cannot tie up every Binder thread.
+ * Cached variants are dropped like thumbnails when the icon they were made from changes. It is safe to use from any
+ * thread.
+ * <p/>
+ * It also serves drawables as they are packaged when their APK entry cannot be handed out as a file descriptor,
+ * see {@link #openOriginal(int)}.
+ */
+public final class IconVariants {
+
+    /**
+     * The largest size served, requests for more are clamped to it.
+     */
+    public static final int MAX_SIZE = 512;
+
+    private static final String TAG = "IconVariants";
+    private static final String DISK_CACHE_DIR = "variants";
+    private static final long DISK_CACHE_BYTES = 4 * 1024 * 1024;
+    private static final int MAX_WORKERS = 2;
+    private static final int MAX_QUEUED = 6;
+    private static final String COPY_PREFIX = "icon";
+    private static final String COPY_SUFFIX = ".tmp";
+    private static final int WEBP_QUALITY = 90;
+    private static final int DEFAULT_RENDER_DP = 48;
+
+    private static IconVariants sInstance;
+
+    private final Context mContext;
+    private final int mVersionCode;
+    private final ThreadPoolExecutor mExecutor;
+    private IconDiskCache mPngCache;
+    private IconDiskCache mWebpCache;
+    private boolean mDiskCacheFailed;
+
+    private IconVariants(Context context) {
+        mContext = context;
+        mVersionCode = IconBitmapCache.readVersionCode(context);
+        mExecutor = new ThreadPoolExecutor(MAX_WORKERS, MAX_WORKERS, 1, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(MAX_QUEUED), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "IconVariants #" + mCount.incrementAndGet());
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+        deleteStaleCopies();
+    }
+
+    // Unlinked copies are deleted as soon as they are opened, so any left over are from a process that died mid-copy
+    private void deleteStaleCopies() {
+        File[] files = mContext.getCacheDir().listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(COPY_PREFIX) && name.endsWith(COPY_SUFFIX)) file.delete();
+        }
+    }
+
+    public static synchronized IconVariants getInstance(Context context) {
+        if (sInstance == null) sInstance = new IconVariants(context.getApplicationContext());
+        return sInstance;
+    }
+
+    /**
+     * Opens a drawable encoded so that its larger side is the given size. If it is not cached yet it is encoded on
+     * the pool while the calling thread waits.
+     *
+     * @param size The size in pixels, clamped to 1 to {@link #MAX_SIZE}.
+     * @param webp True to encode as WebP, false for PNG.
+     * @return A descriptor of the cached file, or of an unlinked copy if the disk cache is unavailable.
+     * @throws FileNotFoundException If the drawable could not be decoded, or too many encodes are already waiting.
+     */
+    public ParcelFileDescriptor open(int resId, int size, boolean webp) throws IOException {
+        int clamped = Math.max(1, Math.min(size, MAX_SIZE));
+        int contentHash = IconBitmapCache.contentHash(mContext, resId);
+        IconDiskCache diskCache = getDiskCache(webp);
+        ParcelFileDescriptor cached = openCached(diskCache, resId, clamped, contentHash);
+        if (cached != null) return cached;
+
+        byte[] encoded = runOnPool(encodeAndCache(resId, clamped, webp, contentHash, diskCache));
+        if (encoded == null) throw new FileNotFoundException("Could not decode " + Integer.toHexString(resId));
+        cached = openCached(diskCache, resId, clamped, contentHash);
+        if (cached != null) return cached;
+        return openUnlinked(new ByteArrayInputStream(encoded));
+    }
+
+    private Callable<byte[]> encodeAndCache(final int resId, final int size, final boolean webp, final int contentHash,
+                                            final IconDiskCache diskCache) {
+        return new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                byte[] encoded = encode(resId, size, webp);
+                if (encoded != null && diskCache != null) {
+                    diskCache.put(resId, size, 0, mVersionCode, contentHash, encoded);
+                }
+                return encoded;
+            }
+        };
+    }
+
+    // Runs an encode on the pool and waits for it. Only MAX_WORKERS + MAX_QUEUED callers ever wait here, the pool
+    // turns any more away at once
+    private <T> T runOnPool(Callable<T> task) throws IOException {
+        Future<T> future;
+        try {
+            future = mExecutor.submit(task);
+        } catch (RejectedExecutionException e) {
+            throw new FileNotFoundException("Too many icons are being encoded, try again later");
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            // The encode still finishes and is cached for the next request
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while encoding");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new FileNotFoundException("Could not encode: " + e.getCause());
+        }
+    }
+
+    private ParcelFileDescriptor openCached(IconDiskCache diskCache, int resId, int size, int contentHash) {
+        if (diskCache == null) return null;
+        File file = diskCache.get(resId, size, 0, mVersionCode, contentHash);
+        if (file == null) return null;
+        try {
+            return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+        } catch (FileNotFoundException e) {
+            // Evicted by another thread in between
+            return null;
+        }
+    }
+
+    /**
+     * Opens a drawable as it is packaged, for when Resources#openRawResourceFd cannot: its entry is compressed in
+     * the APK, or it is not a bitmap at all. Bitmap files are copied unchanged. Anything else, such as an XML
+     * drawable, is drawn at its intrinsic size and encoded as a PNG. Either way the copy is made on the same bounded
+     * pool as the variants, into an unlinked cache file which goes away with the last descriptor.
+     *
+     * @throws Resources.NotFoundException If there is no such drawable.
+     * @throws FileNotFoundException If the drawable could not be decoded, or too many encodes are already waiting.
+     */
+    public ParcelFileDescriptor openOriginal(final int resId) throws IOException {
+        TypedValue value = new TypedValue();
+        mContext.getResources().getValue(resId, value, true);
+        final boolean bitmap = value.string != null && !value.string.toString().endsWith(".xml");
+        return runOnPool(new Callable<ParcelFileDescriptor>() {
+            @Override
+            public ParcelFileDescriptor call() throws IOException {
+                if (bitmap) return openUnlinked(mContext.getResources().openRawResource(resId));
+                byte[] encoded = encode(resId, 0, false);
+                if (encoded == null) throw new FileNotFoundException("Could not decode " + Integer.toHexString(resId));
+                return openUnlinked(new ByteArrayInputStream(encoded));
+            }
+        });
+    }
+
+    // Copies the stream into a cache file and deletes it again once opened, so it is freed with the descriptor
+    private ParcelFileDescriptor openUnlinked(InputStream in) throws IOException {
+        File file;
+        try {
+            file = File.createTempFile(COPY_PREFIX, COPY_SUFFIX, mContext.getCacheDir());
+            OutputStream out = new FileOutputStream(file);
+            try {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } catch (IOException e) {
+                file.delete();
+                throw e;
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        try {
+            return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Gets a drawable encoded as by {@link #open} if it is in the disk cache, without encoding it.
+     *
+     * @return The encoded image, or null if it is not cached.
+     */
+    public byte[] loadCached(int resId, int size, boolean webp) {
+        int clamped = Math.max(1, Math.min(size, MAX_SIZE));
+        IconDiskCache diskCache = getDiskCache(webp);
+        if (diskCache == null) return null;
+        File file = diskCache.get(resId, clamped, 0, mVersionCode, IconBitmapCache.contentHash(mContext, resId));
+        return file != null ? readFile(file) : null;
+    }
+
+    /**
+     * Gets a drawable encoded as by {@link #open}, from the disk cache if it is there and otherwise by encoding and
+     * caching it on the pool while the calling thread waits.
+     *
+     * @return The encoded image, or null if the drawable could not be decoded.
+     * @throws FileNotFoundException If too many encodes are already waiting.
+     */
+    public byte[] load(int resId, int size, boolean webp) throws IOException {
+        byte[] cached = loadCached(resId, size, webp);
+        if (cached != null) return cached;
+        int clamped = Math.max(1, Math.min(size, MAX_SIZE));
+        return runOnPool(encodeAndCache(resId, clamped, webp, IconBitmapCache.contentHash(mContext, resId),
+                getDiskCache(webp)));
+    }
+
+    private static byte[] readFile(File file) {
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                byte[] data = new byte[(int) file.length()];
+                int read = 0;
+                while (read < data.length) {
+                    int n = in.read(data, read, data.length - read);
+                    if (n < 0) return null;
+                    read += n;
+                }
+                return data;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // Evicted by another thread in between, encode it again
+            return null;
+        }
+    }
+
+    // Encodes a drawable so its larger side is the size, or at the size it is packaged at if that is 0
+    private byte[] encode(int resId, int size, boolean webp) {
+        Bitmap bitmap = size > 0 ? IconBitmapCache.decodeUncached(mContext.getResources(), resId, size) : null;
+        if (bitmap == null) bitmap = render(resId, size);
+        if (bitmap == null) {
+            Log.w(TAG, "Could not decode " + Integer.toHexString(resId));
+            return null;
+        }
+        // The decoder lands within a pixel of the size, or below it for small icons; the result is exact
+        int largest = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (size > 0 && largest != size) {
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap, Math.max(1, bitmap.getWidth() * size / largest),
+                    Math.max(1, bitmap.getHeight() * size / largest), true);
+            if (scaled != bitmap) bitmap.recycle();
+            bitmap = scaled;
+        }
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        bitmap.compress(webp ? Bitmap.CompressFormat.WEBP : Bitmap.CompressFormat.PNG, webp ? WEBP_QUALITY : 100, os);
+        bitmap.recycle();
+        return os.toByteArray();
+    }
+
+    // Draws a drawable that is not a bitmap file, at its intrinsic size or at a launcher icon's if it has none
+    private Bitmap render(int resId, int size) {
+        Drawable drawable;
+        try {
+            drawable = mContext.getResources().getDrawable(resId);
+        } catch (Resources.NotFoundException e) {
+            return null;
+        }
+        if (drawable == null) return null;
+        int width = drawable.getIntrinsicWidth();
+        int height = drawable.getIntrinsicHeight();
+        if (width <= 0 || height <= 0) {
+            width = height = Math.round(DEFAULT_RENDER_DP * mContext.getResources().getDisplayMetrics().density);
+        }
+        int largest = Math.max(width, height);
+        int target = size > 0 ? size : Math.min(largest, MAX_SIZE);
+        width = Math.max(1, width * target / largest);
+        height = Math.max(1, height * target / largest);
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        drawable.setBounds(0, 0, width, height);
+        drawable.draw(new Canvas(bitmap));
+        return bitmap;
+    }
+
+    private synchronized IconDiskCache getDiskCache(boolean webp) {
+        if ((webp ? mWebpCache : mPngCache) == null && !mDiskCacheFailed) {
+            File directory = new File(mContext.getCacheDir(), DISK_CACHE_DIR);
+            try {
+                if (webp) {
+                    mWebpCache = IconDiskCache.open(new File(directory, "webp"), DISK_CACHE_BYTES, ".webp");
+                } else {
+                    mPngCache = IconDiskCache.open(new File(directory, "png"), DISK_CACHE_BYTES, ".png");
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Could not open the disk cache, icons will be scaled on every request", e);
+                mDiskCacheFailed = true;
+            }
+        }
+        return webp ? mWebpCache : mPngCache;
+    }
+}
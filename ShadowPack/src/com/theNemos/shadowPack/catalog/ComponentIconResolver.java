@@ -0,0 +1,168 @@
+package com.theNemos.shadowPack.catalog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import android.content.ComponentName;
+import android.content.Context;
+
+/**
+ * Resolves app components to the pack's icons using assets/appfilter.bin, the table AppFilterCompiler compiles
+ * from res/xml/appfilter.xml at build time (see tools/ for the layout). The table is memory-mapped and a Bloom
+ * filter turns away most components the pack does not theme, so resolving every installed app costs
+ * microseconds rather than an XML parse, and resolving allocates nothing.
+ * <p/>
+ * All reads are absolute, so one instance can be shared by any number of threads.
+ */
+public final class ComponentIconResolver {
+
+    public static final String ASSET = "appfilter.bin";
+
+    private static final int MAGIC = 0x53504146;
+    private static final int VERSION = 1;
+    private static final int ENTRY_SIZE = 16;
+
+    private static final Object sLock = new Object();
+    private static volatile ComponentIconResolver sInstance;
+
+    private final ByteBuffer mBuffer;
+    private final int mCount;
+    private final int mBloomMask;
+    private final int mBloomHashes;
+    private final int mPackageCount;
+    private final int mEntriesOffset;
+    private final int mBloomOffset;
+    private final int mPackagesOffset;
+    private final int mStringsOffset;
+
+    ComponentIconResolver(ByteBuffer buffer) throws IOException {
+        mBuffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException(ASSET + " is not a version " + VERSION + " appfilter table");
+        }
+        mCount = buffer.getInt(8);
+        mBloomMask = (1 << buffer.getInt(12)) - 1;
+        mBloomHashes = buffer.getInt(16);
+        mPackageCount = buffer.getInt(20);
+        mEntriesOffset = buffer.getInt(24);
+        mBloomOffset = buffer.getInt(28);
+        mPackagesOffset = buffer.getInt(32);
+        mStringsOffset = buffer.getInt(36);
+    }
+
+    /**
+     * Gets the process-wide resolver, mapping the table the first time. This does disk I/O the first time, so
+     * call it off the main thread. Once the table is mapped this takes no lock, so Binder threads never wait on
+     * each other here.
+     */
+    public static ComponentIconResolver getInstance(Context context) throws IOException {
+        ComponentIconResolver resolver = sInstance;
+        if (resolver != null) return resolver;
+        synchronized (sLock) {
+            if (sInstance == null) {
+                sInstance = new ComponentIconResolver(MappedAsset.map(context.getApplicationContext(), ASSET));
+            }
+            return sInstance;
+        }
+    }
+
+    /**
+     * Gets the number of components the pack themes.
+     */
+    public int size() {
+        return mCount;
+    }
+
+    public int resolve(ComponentName component) {
+        return resolve(component.getPackageName(), component.getClassName());
+    }
+
+    /**
+     * Gets the drawable resource id the pack uses for an activity, or 0 if the pack does not theme it.
+     *
+     * @param packageName The package of the activity.
+     * @param className   The fully qualified class name of the activity.
+     */
+    public int resolve(String packageName, String className) {
+        int hash = 0;
+        int fnv = 0x811c9dc5;
+        for (int i = 0; i < packageName.length(); i++) {
+            char c = packageName.charAt(i);
+            hash = 31 * hash + c;
+            fnv = (fnv ^ c) * 0x01000193;
+        }
+        hash = 31 * hash + '/';
+        fnv = (fnv ^ '/') * 0x01000193;
+        for (int i = 0; i < className.length(); i++) {
+            char c = className.charAt(i);
+            hash = 31 * hash + c;
+            fnv = (fnv ^ c) * 0x01000193;
+        }
+
+        // Most installed apps are misses, the Bloom filter answers those without searching the table
+        for (int n = 0; n < mBloomHashes; n++) {
+            int bit = (hash + n * fnv) & mBloomMask;
+            if ((mBuffer.get(mBloomOffset + (bit >>> 3)) & (1 << (bit & 7))) == 0) return 0;
+        }
+
+        int low = 0;
+        int high = mCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midHash = mBuffer.getInt(entry(mid));
+            if (midHash < hash) {
+                low = mid + 1;
+            } else if (midHash > hash) {
+                high = mid - 1;
+            } else {
+                int i = mid;
+                while (i > 0 && mBuffer.getInt(entry(i - 1)) == hash) i--;
+                for (; i < mCount && mBuffer.getInt(entry(i)) == hash; i++) {
+                    if (keyEquals(i, packageName, className)) return mBuffer.getInt(entry(i) + 4);
+                }
+                return 0;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Gets whether the pack themes at least one activity of a package. Used to tell apart apps the pack themes
+     * under a different activity from apps it does not know at all.
+     */
+    public boolean hasPackage(String packageName) {
+        int hash = packageName.hashCode();
+        int low = 0;
+        int high = mPackageCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midHash = mBuffer.getInt(mPackagesOffset + mid * 4);
+            if (midHash < hash) {
+                low = mid + 1;
+            } else if (midHash > hash) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean keyEquals(int position, String packageName, String className) {
+        int length = mBuffer.getShort(entry(position) + 12) & 0xffff;
+        if (length != packageName.length() + 1 + className.length()) return false;
+        int offset = mStringsOffset + mBuffer.getInt(entry(position) + 8);
+        for (int i = 0; i < packageName.length(); i++) {
+            if ((mBuffer.get(offset++) & 0xff) != packageName.charAt(i)) return false;
+        }
+        if (mBuffer.get(offset++) != '/') return false;
+        for (int i = 0; i < className.length(); i++) {
+            if ((mBuffer.get(offset++) & 0xff) != className.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private int entry(int position) {
+        return mEntriesOffset + position * ENTRY_SIZE;
+    }
+}
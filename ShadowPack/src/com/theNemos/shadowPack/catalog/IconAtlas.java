@@ -0,0 +1,120 @@
+package com.theNemos.shadowPack.catalog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import android.content.Context;
+
+/**
+ * Read-only view of assets/icon_atlas.bin, the table IconAtlasGenerator writes next to the atlas images in
+ * assets/atlas/ (see tools/ for the layout). Every category's icons are packed into a few atlases, so a page can
+ * be shown by decoding those instead of one image per icon.
+ * <p/>
+ * Icons are addressed by their entry in the table, found with {@link #find(int, int)}. Rectangles are in the
+ * atlas' own pixels, whose cells are {@link #getCellSize()} wide. All reads are absolute, so one instance can be
+ * shared by any number of threads.
+ */
+public final class IconAtlas {
+
+    public static final String ASSET = "icon_atlas.bin";
+
+    private static final int MAGIC = 0x53504154;
+    private static final int VERSION = 1;
+    private static final int CATEGORY_SIZE = 12;
+    private static final int ENTRY_SIZE = 16;
+
+    private final ByteBuffer mBuffer;
+    private final int mCellSize;
+    private final int mCategoryCount;
+    private final int mCategoriesOffset;
+    private final int mEntriesOffset;
+
+    IconAtlas(ByteBuffer buffer) throws IOException {
+        mBuffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException(ASSET + " is not a version " + VERSION + " icon atlas table");
+        }
+        mCellSize = buffer.getInt(8);
+        mCategoryCount = buffer.getInt(12);
+        mCategoriesOffset = buffer.getInt(16);
+        mEntriesOffset = buffer.getInt(20);
+    }
+
+    /**
+     * Maps the table out of the APK, see {@link MappedAsset#map(Context, String)}.
+     */
+    public static IconAtlas open(Context context) throws IOException {
+        return new IconAtlas(MappedAsset.map(context, ASSET));
+    }
+
+    /**
+     * Gets the pixel size of the square cell every icon was fitted into.
+     */
+    public int getCellSize() {
+        return mCellSize;
+    }
+
+    /**
+     * Gets the number of atlas images of a category, 0 if the category has none.
+     */
+    public int getAtlasCount(int category) {
+        if (category < 0 || category >= mCategoryCount) return 0;
+        return mBuffer.getInt(mCategoriesOffset + category * CATEGORY_SIZE + 8);
+    }
+
+    /**
+     * Gets the asset path of one of a category's atlas images.
+     */
+    public static String getAtlasAsset(int category, int atlas) {
+        return "atlas/" + category + "_" + atlas + ".png";
+    }
+
+    /**
+     * Gets the table entry of an icon in a category, or -1 if the category's atlases do not have it.
+     */
+    public int find(int category, int resId) {
+        if (category < 0 || category >= mCategoryCount) return -1;
+        int first = mBuffer.getInt(mCategoriesOffset + category * CATEGORY_SIZE);
+        int low = first;
+        int high = first + mBuffer.getInt(mCategoriesOffset + category * CATEGORY_SIZE + 4) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midId = mBuffer.getInt(entry(mid));
+            if (midId < resId) {
+                low = mid + 1;
+            } else if (midId > resId) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets which of its category's atlases an icon is in.
+     */
+    public int getAtlas(int entry) {
+        return mBuffer.getShort(entry(entry) + 4) & 0xffff;
+    }
+
+    public int getX(int entry) {
+        return mBuffer.getShort(entry(entry) + 6) & 0xffff;
+    }
+
+    public int getY(int entry) {
+        return mBuffer.getShort(entry(entry) + 8) & 0xffff;
+    }
+
+    public int getWidth(int entry) {
+        return mBuffer.getShort(entry(entry) + 10) & 0xffff;
+    }
+
+    public int getHeight(int entry) {
+        return mBuffer.getShort(entry(entry) + 12) & 0xffff;
+    }
+
+    private int entry(int entry) {
+        return mEntriesOffset + entry * ENTRY_SIZE;
+    }
+}
@@ -0,0 +1,265 @@
+package com.theNemos.shadowPack.catalog;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * The process-wide catalog of icons in the pack. It is built once, on a background thread, the first time
+ * something asks for it and is then kept for the life of the process, so rotating or paging through
+ * IconActivity never rebuilds it.
+ * <p/>
+ * The catalog is immutable once loaded; the arrays it hands out are shared and must not be modified.
+ */
+public final class IconCatalog {
+
+    private static final String TAG = "IconCatalog";
+
+    /**
+     * Receives the catalog on the main thread once it has loaded.
+     */
+    public interface Callback {
+        public void onCatalogReady(IconCatalog catalog);
+
+        /**
+         * Called instead of {@link #onCatalogReady} if the catalog could not be built. A later
+         * {@link IconCatalog#load(Context, Callback)} tries again.
+         */
+        public void onCatalogFailed();
+    }
+
+    private static final Object sLock = new Object();
+    private static final List<Callback> sPending = new ArrayList<Callback>();
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+    private static volatile IconCatalog sInstance;
+    private static boolean sLoading;
+
+    private final String[] mKeys;
+    private final int[][] mCategories;
+    private final int[] mPack;
+    private final int[] mSortedIds;
+    private final IconIndex mIndex;
+    private final IconAtlas mAtlas;
+
+    private IconCatalog(String[] keys, int[][] categories, int[] pack, IconIndex index, IconAtlas atlas) {
+        mKeys = keys;
+        mCategories = categories;
+        mPack = pack;
+        mIndex = index;
+        mAtlas = atlas;
+
+        int total = pack.length;
+        for (int[] category : categories) total += category.length;
+        int[] ids = new int[total];
+        int at = 0;
+        for (int[] category : categories) {
+            System.arraycopy(category, 0, ids, at, category.length);
+            at += category.length;
+        }
+        System.arraycopy(pack, 0, ids, at, pack.length);
+        Arrays.sort(ids);
+        mSortedIds = ids;
+    }
+
+    /**
+     * Gets the catalog if it has already loaded, without starting a load.
+     */
+    public static IconCatalog peek() {
+        return sInstance;
+    }
+
+    /**
+     * Delivers the catalog to the callback on the main thread, loading it in the background first if needed.
+     * If the catalog is already loaded and this is called on the main thread, the callback runs immediately.
+     */
+    public static void load(Context context, Callback callback) {
+        IconCatalog catalog = sInstance;
+        if (catalog != null && Looper.myLooper() == Looper.getMainLooper()) {
+            callback.onCatalogReady(catalog);
+            return;
+        }
+        synchronized (sLock) {
+            if (sInstance == null) {
+                sPending.add(callback);
+                startLoading(context);
+                return;
+            }
+        }
+        deliver(callback);
+    }
+
+    /**
+     * Stops a callback passed to {@link #load(Context, Callback)} from being called, e.g. when its view is destroyed.
+     */
+    public static void cancel(Callback callback) {
+        synchronized (sLock) {
+            sPending.remove(callback);
+        }
+    }
+
+    /**
+     * Gets the catalog, blocking the calling thread until it has loaded. Never call this on the main thread.
+     *
+     * @return The catalog, or null if loading it failed. The next call tries again.
+     */
+    public static IconCatalog await(Context context) throws InterruptedException {
+        IconCatalog catalog = sInstance;
+        if (catalog != null) return catalog;
+        synchronized (sLock) {
+            startLoading(context);
+            while (sInstance == null && sLoading) {
+                sLock.wait();
+            }
+            return sInstance;
+        }
+    }
+
+    // Must be called while holding sLock.
+    private static void startLoading(Context context) {
+        if (sLoading || sInstance != null) return;
+        sLoading = true;
+        final Context appContext = context.getApplicationContext();
+        Thread loader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                IconCatalog catalog = null;
+                List<Callback> pending = null;
+                try {
+                    catalog = build(appContext);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Failed to build the icon catalog", e);
+                } finally {
+                    // Should the build fail, waiters in await() get null and callbacks are told it failed
+                    synchronized (sLock) {
+                        sInstance = catalog;
+                        sLoading = false;
+                        pending = new ArrayList<Callback>(sPending);
+                        sPending.clear();
+                        sLock.notifyAll();
+                    }
+                }
+                for (Callback callback : pending) {
+                    if (catalog != null) {
+                        deliver(callback);
+                    } else {
+                        deliverFailure(callback);
+                    }
+                }
+            }
+        }, "IconCatalog");
+        loader.start();
+    }
+
+    private static IconCatalog build(Context context) {
+        int[][] categories = new int[IconTables.CATEGORIES.length][];
+        for (int i = 0; i < categories.length; i++) {
+            categories[i] = IconTables.CATEGORIES[i].clone();
+        }
+        IconIndex index = null;
+        try {
+            index = IconIndex.getInstance(context);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to open " + IconIndex.ASSET + ", icons can only be looked up by id", e);
+        } catch (RuntimeException e) {
+            Log.e(TAG, IconIndex.ASSET + " is corrupt, icons can only be looked up by id", e);
+        }
+        IconAtlas atlas = null;
+        try {
+            atlas = IconAtlas.open(context);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to open " + IconAtlas.ASSET + ", icon pages will decode every icon", e);
+        } catch (RuntimeException e) {
+            Log.e(TAG, IconAtlas.ASSET + " is corrupt, icon pages will decode every icon", e);
+        }
+        return new IconCatalog(IconTables.CATEGORY_KEYS.clone(), categories, IconTables.PACK.clone(), index, atlas);
+    }
+
+    private static void deliver(final Callback callback) {
+        sMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                IconCatalog catalog = sInstance;
+                if (catalog != null) callback.onCatalogReady(catalog);
+            }
+        });
+    }
+
+    private static void deliverFailure(final Callback callback) {
+        sMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onCatalogFailed();
+            }
+        });
+    }
+
+    public int getCategoryCount() {
+        return mCategories.length;
+    }
+
+    public String getCategoryKey(int category) {
+        return mKeys[category];
+    }
+
+    /**
+     * Gets the position of the category with the given key in icon_categories.xml, or -1 if there is none.
+     */
+    public int indexOfCategory(String key) {
+        for (int i = 0; i < mKeys.length; i++) {
+            if (mKeys[i].equals(key)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the drawable resource ids in a category, in display order.
+     */
+    public int[] getIcons(int category) {
+        return mCategories[category];
+    }
+
+    /**
+     * Gets the drawable resource ids offered to launcher icon pickers.
+     */
+    public int[] getPack() {
+        return mPack;
+    }
+
+    /**
+     * Gets the memory-mapped icon index, or null if it could not be opened.
+     */
+    public IconIndex getIndex() {
+        return mIndex;
+    }
+
+    /**
+     * Gets the table of the icon atlases, or null if it could not be opened.
+     */
+    public IconAtlas getAtlas() {
+        return mAtlas;
+    }
+
+    /**
+     * Gets the drawable resource id of the icon with the given name, or 0 if the pack has no such icon.
+     */
+    public int findIcon(String name) {
+        if (mIndex == null) return 0;
+        int position = mIndex.find(name);
+        return position < 0 ? 0 : mIndex.getResId(position);
+    }
+
+    /**
+     * Gets whether a drawable resource id is one of the pack's icons.
+     */
+    public boolean contains(int resId) {
+        return Arrays.binarySearch(mSortedIds, resId) >= 0;
+    }
+}
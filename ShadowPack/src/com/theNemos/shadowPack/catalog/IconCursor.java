@@ -0,0 +1,250 @@
+package com.theNemos.shadowPack.catalog;
+
+import android.database.AbstractCursor;
+import android.database.CursorWindow;
+import android.provider.BaseColumns;
+
+/**
+ * A cursor over a page of the icon index, in name order, for iconsProvider#query. Rows are only a position in the
+ * {@link IconIndex}; every value is read from the mapped index when it is asked for, and
+ * {@link #fillWindow(int, CursorWindow)} writes straight into the window, so a query of thousands of rows costs
+ * one int per row on the heap plus the strings the window copies.
+ */
+public final class IconCursor extends AbstractCursor {
+
+    /**
+     * The drawable resource id, also in {@link #COLUMN_RESOURCE_ID}.
+     */
+    public static final String COLUMN_ID = BaseColumns._ID;
+    public static final String COLUMN_NAME = "name";
+    /**
+     * The key of the icon's category, the first one it is in if it is in several and no category was queried.
+     */
+    public static final String COLUMN_CATEGORY = "category";
+    public static final String COLUMN_RESOURCE_ID = "resource_id";
+    /**
+     * The content URI the icon can be opened at.
+     */
+    public static final String COLUMN_URI = "uri";
+    public static final String COLUMN_WIDTH = "width";
+    public static final String COLUMN_HEIGHT = "height";
+    /**
+     * A hash of the icon's image files computed at build time, as an unsigned 32-bit value. It changes whenever
+     * the icon is redrawn, so a client can keep it and later ask iconsProvider which icons changed. Read it with
+     * Cursor#getLong and pass it back as is, see iconsProvider#EXTRA_CONTENT_HASHES.
+     */
+    public static final String COLUMN_CONTENT_HASH = "content_hash";
+
+    private static final String[] ALL_COLUMNS = {
+            COLUMN_ID, COLUMN_NAME, COLUMN_CATEGORY, COLUMN_RESOURCE_ID, COLUMN_URI, COLUMN_WIDTH, COLUMN_HEIGHT,
+            COLUMN_CONTENT_HASH
+    };
+    private static final int ID = 0;
+    private static final int NAME = 1;
+    private static final int CATEGORY = 2;
+    private static final int RESOURCE_ID = 3;
+    private static final int URI = 4;
+    private static final int WIDTH = 5;
+    private static final int HEIGHT = 6;
+    private static final int CONTENT_HASH = 7;
+
+    private final IconIndex mIndex;
+    private final IconCatalog mCatalog;
+    private final int[] mPositions;
+    private final int mCategory;
+    private final String mUriPrefix;
+    private final String[] mColumnNames;
+    private final int[] mColumns;
+
+    private IconCursor(IconCatalog catalog, int[] positions, int category, String uriPrefix, String[] projection) {
+        mIndex = catalog.getIndex();
+        mCatalog = catalog;
+        mPositions = positions;
+        mCategory = category;
+        mUriPrefix = uriPrefix;
+        mColumnNames = projection != null ? projection : ALL_COLUMNS;
+        mColumns = new int[mColumnNames.length];
+        for (int i = 0; i < mColumnNames.length; i++) {
+            mColumns[i] = indexOf(mColumnNames[i]);
+        }
+    }
+
+    /**
+     * Queries a page of icons.
+     *
+     * @param uriPrefix  The provider URI the icon names are appended to for {@link #COLUMN_URI}.
+     * @param projection The columns to return, or null for all of them.
+     * @param category   The key of the category to list, or null for all icons.
+     * @param prefix     The prefix the names must start with, or null for any name.
+     * @param offset     How many matching icons to skip.
+     * @param limit      The most rows to return, or a negative number for no limit.
+     * @throws IllegalArgumentException If the projection names a column that does not exist.
+     */
+    public static IconCursor query(IconCatalog catalog, String uriPrefix, String[] projection, String category,
+                                   String prefix, int offset, int limit) {
+        IconIndex index = catalog.getIndex();
+        int categoryIndex = category != null ? catalog.indexOfCategory(category) : -1;
+        if (index == null || (category != null && categoryIndex < 0) || limit == 0) {
+            return new IconCursor(catalog, new int[0], categoryIndex, uriPrefix, projection);
+        }
+
+        int first = prefix != null ? index.lowerBound(prefix) : 0;
+        int capacity = index.size() - first;
+        if (limit > 0) capacity = Math.min(capacity, limit);
+        int[] positions = new int[Math.max(0, capacity)];
+        int count = 0;
+        int skipped = 0;
+        for (int order = first; order < index.size() && count < positions.length; order++) {
+            int position = index.getByNameOrder(order);
+            // Names in order, so the first one without the prefix ends the run
+            if (prefix != null && !index.nameStartsWith(position, prefix)) break;
+            if (categoryIndex >= 0 && !index.isInCategory(position, categoryIndex)) continue;
+            if (skipped < offset) {
+                skipped++;
+                continue;
+            }
+            positions[count++] = position;
+        }
+        if (count < positions.length) {
+            int[] trimmed = new int[count];
+            System.arraycopy(positions, 0, trimmed, 0, count);
+            positions = trimmed;
+        }
+        return new IconCursor(catalog, positions, categoryIndex, uriPrefix, projection);
+    }
+
+    private static int indexOf(String column) {
+        for (int i = 0; i < ALL_COLUMNS.length; i++) {
+            if (ALL_COLUMNS[i].equals(column)) return i;
+        }
+        throw new IllegalArgumentException("Unknown column " + column);
+    }
+
+    @Override
+    public int getCount() {
+        return mPositions.length;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mColumnNames;
+    }
+
+    @Override
+    public int getType(int column) {
+        if (isString(mColumns[column])) {
+            return getString(column) != null ? FIELD_TYPE_STRING : FIELD_TYPE_NULL;
+        }
+        return FIELD_TYPE_INTEGER;
+    }
+
+    @Override
+    public String getString(int column) {
+        return getString(mPositions[getPosition()], mColumns[column]);
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) getLong(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        return getLong(mPositions[getPosition()], mColumns[column]);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return getLong(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return getLong(column);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return isString(mColumns[column]) && getString(column) == null;
+    }
+
+    /**
+     * Copies rows into a window from a position on, reading each value straight out of the index, until the rows
+     * run out or the window is full.
+     */
+    @Override
+    public void fillWindow(int position, CursorWindow window) {
+        if (position < 0 || position >= mPositions.length) return;
+        window.acquireReference();
+        try {
+            window.clear();
+            window.setStartPosition(position);
+            window.setNumColumns(mColumns.length);
+            for (int row = position; row < mPositions.length; row++) {
+                if (!window.allocRow()) return;
+                for (int c = 0; c < mColumns.length; c++) {
+                    int column = mColumns[c];
+                    boolean stored;
+                    if (isString(column)) {
+                        String value = getString(mPositions[row], column);
+                        stored = value != null ? window.putString(value, row, c) : window.putNull(row, c);
+                    } else {
+                        stored = window.putLong(getLong(mPositions[row], column), row, c);
+                    }
+                    if (!stored) {
+                        // Full; the rest is copied into the next window
+                        window.freeLastRow();
+                        return;
+                    }
+                }
+            }
+        } finally {
+            window.releaseReference();
+        }
+    }
+
+    private static boolean isString(int column) {
+        return column == NAME || column == CATEGORY || column == URI;
+    }
+
+    private String getString(int position, int column) {
+        switch (column) {
+            case NAME:
+                return mIndex.getName(position);
+            case CATEGORY:
+                int category = mCategory >= 0 ? mCategory : firstCategory(position);
+                if (category < 0 || category >= mCatalog.getCategoryCount()) return null;
+                return mCatalog.getCategoryKey(category);
+            case URI:
+                return mUriPrefix + "/" + mIndex.getName(position);
+            default:
+                return Long.toString(getLong(position, column));
+        }
+    }
+
+    private long getLong(int position, int column) {
+        switch (column) {
+            case ID:
+            case RESOURCE_ID:
+                return mIndex.getResId(position);
+            case WIDTH:
+                return mIndex.getWidth(position);
+            case HEIGHT:
+                return mIndex.getHeight(position);
+            case CONTENT_HASH:
+                return mIndex.getContentHash(position) & 0xffffffffL;
+            default:
+                return 0;
+        }
+    }
+
+    private int firstCategory(int position) {
+        int mask = mIndex.getCategoryMask(position);
+        return mask != 0 ? Integer.numberOfTrailingZeros(mask) : -1;
+    }
+}
@@ -0,0 +1,263 @@
+package com.theNemos.shadowPack.catalog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import android.content.Context;
+
+/**
+ * Read-only view of assets/icon_index.bin, the binary icon index written at build time by IconIndexGenerator
+ * (see tools/ for the layout). The file is memory-mapped, so looking icons up never builds a Java object per icon
+ * and the heap stays flat however large the pack grows.
+ * <p/>
+ * Icons are addressed by their position in the index. All reads are absolute, so one instance can be shared by
+ * any number of threads.
+ */
+public final class IconIndex {
+
+    public static final String ASSET = "icon_index.bin";
+
+    /**
+     * Set for icons that have no transparent pixels, see {@link #getFlags(int)}.
+     */
+    public static final int FLAG_OPAQUE = 1;
+
+    private static final int MAGIC = 0x53504958;
+    private static final int VERSION = 2;
+    private static final int ENTRY_SIZE = 28;
+
+    private static final Object sLock = new Object();
+    private static volatile IconIndex sInstance;
+
+    private final ByteBuffer mBuffer;
+    private final int mCount;
+    private final int mCategoryCount;
+    private final int mEntriesOffset;
+    private final int mNamesOffset;
+    private final int mStringsOffset;
+    private final int mIdsOffset;
+
+    IconIndex(ByteBuffer buffer) throws IOException {
+        mBuffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException(ASSET + " is not a version " + VERSION + " icon index");
+        }
+        mCount = buffer.getInt(8);
+        mCategoryCount = buffer.getInt(12);
+        mEntriesOffset = buffer.getInt(16);
+        mNamesOffset = buffer.getInt(20);
+        mStringsOffset = buffer.getInt(24);
+        mIdsOffset = buffer.getInt(32);
+    }
+
+    /**
+     * Gets the process-wide index, mapping it out of the APK the first time (see
+     * {@link MappedAsset#map(Context, String)}). It is the same instance the catalog hands out, but needs nothing
+     * else to have loaded, so looking up a single icon never waits for the catalog. Once mapped this takes no lock.
+     */
+    public static IconIndex getInstance(Context context) throws IOException {
+        IconIndex index = sInstance;
+        if (index != null) return index;
+        synchronized (sLock) {
+            if (sInstance == null) {
+                sInstance = new IconIndex(MappedAsset.map(context.getApplicationContext(), ASSET));
+            }
+            return sInstance;
+        }
+    }
+
+    /**
+     * Gets the index if something has already mapped it, without mapping it.
+     */
+    public static IconIndex peek() {
+        return sInstance;
+    }
+
+    /**
+     * Gets the number of icons in the index.
+     */
+    public int size() {
+        return mCount;
+    }
+
+    public int getCategoryCount() {
+        return mCategoryCount;
+    }
+
+    /**
+     * Gets the position of the icon with the given drawable name, or -1 if the pack has no such icon.
+     */
+    public int find(String name) {
+        int hash = name.hashCode();
+        int low = 0;
+        int high = mCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midHash = mBuffer.getInt(entry(mid));
+            if (midHash < hash) {
+                low = mid + 1;
+            } else if (midHash > hash) {
+                high = mid - 1;
+            } else {
+                // Walk back to the first entry with this hash, then check each candidate's name
+                int i = mid;
+                while (i > 0 && mBuffer.getInt(entry(i - 1)) == hash) i--;
+                for (; i < mCount && mBuffer.getInt(entry(i)) == hash; i++) {
+                    if (compareName(i, name) == 0) return i;
+                }
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the position of the icon with the given drawable resource id, or -1 if the pack has no such icon.
+     */
+    public int indexOf(int resId) {
+        int low = 0;
+        int high = mCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int position = mBuffer.getInt(mIdsOffset + mid * 4);
+            int midId = getResId(position);
+            if (midId < resId) {
+                low = mid + 1;
+            } else if (midId > resId) {
+                high = mid - 1;
+            } else {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    public int getResId(int position) {
+        return mBuffer.getInt(entry(position) + 4);
+    }
+
+    /**
+     * Gets the categories the icon belongs to, bit n set for the n-th category in icon_categories.xml.
+     */
+    public int getCategoryMask(int position) {
+        return mBuffer.getInt(entry(position) + 8);
+    }
+
+    public boolean isInCategory(int position, int category) {
+        return (getCategoryMask(position) & (1 << category)) != 0;
+    }
+
+    /**
+     * Gets the pixel width of the largest density of the icon, or 0 if it is not a bitmap.
+     */
+    public int getWidth(int position) {
+        return mBuffer.getShort(entry(position) + 12) & 0xffff;
+    }
+
+    /**
+     * Gets the pixel height of the largest density of the icon, or 0 if it is not a bitmap.
+     */
+    public int getHeight(int position) {
+        return mBuffer.getShort(entry(position) + 14) & 0xffff;
+    }
+
+    /**
+     * Gets the flags the build recorded for an icon, such as {@link #FLAG_OPAQUE}.
+     */
+    public int getFlags(int position) {
+        return mBuffer.getShort(entry(position) + 22) & 0xffff;
+    }
+
+    /**
+     * Gets whether an icon has no transparent pixels, so it can be decoded without an alpha channel.
+     */
+    public boolean isOpaque(int position) {
+        return (getFlags(position) & FLAG_OPAQUE) != 0;
+    }
+
+    /**
+     * Gets a hash of the icon's image files. It changes whenever the icon is redrawn, so anything derived from the
+     * icon and kept across app updates can be checked against it.
+     */
+    public int getContentHash(int position) {
+        return mBuffer.getInt(entry(position) + 24);
+    }
+
+    /**
+     * Gets the drawable name of an icon. This allocates a String, prefer {@link #compareName(int, String)} for lookups.
+     */
+    public String getName(int position) {
+        int length = getNameLength(position);
+        int offset = getNameOffset(position);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            // Resource names are plain ASCII
+            chars[i] = (char) mBuffer.get(offset + i);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Compares an icon's name with a string, the same way {@link String#compareTo(String)} would.
+     */
+    public int compareName(int position, String name) {
+        int length = getNameLength(position);
+        int offset = getNameOffset(position);
+        int n = Math.min(length, name.length());
+        for (int i = 0; i < n; i++) {
+            int diff = (mBuffer.get(offset + i) & 0xff) - name.charAt(i);
+            if (diff != 0) return diff;
+        }
+        return length - name.length();
+    }
+
+    /**
+     * Gets whether an icon's name starts with the given prefix.
+     */
+    public boolean nameStartsWith(int position, String prefix) {
+        int length = getNameLength(position);
+        if (length < prefix.length()) return false;
+        int offset = getNameOffset(position);
+        for (int i = 0; i < prefix.length(); i++) {
+            if ((mBuffer.get(offset + i) & 0xff) != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the position of the n-th icon in name order.
+     */
+    public int getByNameOrder(int order) {
+        return mBuffer.getInt(mNamesOffset + order * 4);
+    }
+
+    /**
+     * Gets the first place in name order whose name is not less than the given prefix, so that every icon starting
+     * with the prefix follows from there.
+     */
+    public int lowerBound(String prefix) {
+        int low = 0;
+        int high = mCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareName(getByNameOrder(mid), prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int entry(int position) {
+        return mEntriesOffset + position * ENTRY_SIZE;
+    }
+
+    private int getNameOffset(int position) {
+        return mStringsOffset + mBuffer.getInt(entry(position) + 16);
+    }
+
+    private int getNameLength(int position) {
+        return mBuffer.getShort(entry(position) + 20) & 0xffff;
+    }
+}
@@ -0,0 +1,140 @@
+package com.theNemos.shadowPack.catalog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import android.content.Context;
+
+import com.theNemos.shadowPack.R;
+
+/**
+ * A prefix index over icon names and keywords, used for search-as-you-type across every category. Each icon is
+ * indexed under its full drawable name, each '_' separated part of it, and any keywords given for it in
+ * res/values/icon_keywords.xml. Tokens are kept sorted, so every query term is two binary searches.
+ * <p/>
+ * Building it reads every name once, so do that off the main thread with {@link #get(Context, IconCatalog)}.
+ * Searching is cheap enough to run on every keystroke.
+ */
+public final class IconSearchIndex {
+
+    private static IconSearchIndex sInstance;
+
+    private final IconIndex mIndex;
+    private final String[] mTokens;
+    private final int[] mPositions;
+
+    private IconSearchIndex(IconIndex index, String[] tokens, int[] positions) {
+        mIndex = index;
+        mTokens = tokens;
+        mPositions = positions;
+    }
+
+    /**
+     * Gets the search index if it has already been built.
+     */
+    public static synchronized IconSearchIndex peek() {
+        return sInstance;
+    }
+
+    /**
+     * Gets the search index, building it first if needed. Returns null when the catalog has no icon index.
+     */
+    public static synchronized IconSearchIndex get(Context context, IconCatalog catalog) {
+        if (sInstance == null && catalog.getIndex() != null) {
+            sInstance = build(context, catalog.getIndex());
+        }
+        return sInstance;
+    }
+
+    private static IconSearchIndex build(Context context, IconIndex index) {
+        final List<String> tokens = new ArrayList<String>(index.size() * 3);
+        final List<Integer> positions = new ArrayList<Integer>(index.size() * 3);
+        for (int position = 0; position < index.size(); position++) {
+            String name = index.getName(position);
+            tokens.add(name);
+            positions.add(position);
+            for (String part : name.split("_")) {
+                if (part.length() == 0 || part.equals(name)) continue;
+                tokens.add(part);
+                positions.add(position);
+            }
+        }
+
+        // Keyword items look like "drawable_name:keyword another keyword"
+        for (String item : context.getResources().getStringArray(R.array.icon_keywords)) {
+            int colon = item.indexOf(':');
+            if (colon <= 0) continue;
+            int position = index.find(item.substring(0, colon).trim());
+            if (position < 0) continue;
+            for (String keyword : item.substring(colon + 1).trim().split("\\s+")) {
+                if (keyword.length() == 0) continue;
+                tokens.add(keyword.toLowerCase(Locale.US));
+                positions.add(position);
+            }
+        }
+
+        Integer[] order = new Integer[tokens.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return tokens.get(a).compareTo(tokens.get(b));
+            }
+        });
+        String[] sortedTokens = new String[order.length];
+        int[] sortedPositions = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedTokens[i] = tokens.get(order[i]);
+            sortedPositions[i] = positions.get(order[i]);
+        }
+        return new IconSearchIndex(index, sortedTokens, sortedPositions);
+    }
+
+    /**
+     * Gets the drawable resource ids of every icon matching the query, in name order. Each whitespace separated
+     * term of the query must be the prefix of one of the icon's tokens.
+     */
+    public int[] search(String query) {
+        String[] terms = query.trim().toLowerCase(Locale.US).split("\\s+");
+        BitSet matches = null;
+        for (String term : terms) {
+            if (term.length() == 0) continue;
+            BitSet termMatches = new BitSet(mIndex.size());
+            for (int i = lowerBound(term); i < mTokens.length && mTokens[i].startsWith(term); i++) {
+                termMatches.set(mPositions[i]);
+            }
+            if (matches == null) {
+                matches = termMatches;
+            } else {
+                matches.and(termMatches);
+            }
+        }
+        if (matches == null) return new int[0];
+
+        int[] result = new int[matches.cardinality()];
+        int at = 0;
+        for (int order = 0; order < mIndex.size() && at < result.length; order++) {
+            int position = mIndex.getByNameOrder(order);
+            if (matches.get(position)) result[at++] = mIndex.getResId(position);
+        }
+        return result;
+    }
+
+    private int lowerBound(String term) {
+        int low = 0;
+        int high = mTokens.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mTokens[mid].compareTo(term) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
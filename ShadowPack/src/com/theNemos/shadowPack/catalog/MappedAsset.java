@@ -0,0 +1,92 @@
+package com.theNemos.shadowPack.catalog;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
+
+/**
+ * Memory-maps the binary tables the build writes into assets/.
+ */
+final class MappedAsset {
+
+    private MappedAsset() {
+    }
+
+    /**
+     * Maps an asset straight out of the APK. Should the packager have compressed the asset, it is copied to the
+     * app's files folder once per app version and mapped from there instead.
+     */
+    static ByteBuffer map(Context context, String asset) throws IOException {
+        AssetFileDescriptor afd;
+        try {
+            afd = context.getAssets().openFd(asset);
+        } catch (FileNotFoundException compressed) {
+            return map(extract(context, asset));
+        }
+        try {
+            return map(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+        } finally {
+            afd.close();
+        }
+    }
+
+    private static ByteBuffer map(FileDescriptor fd, long offset, long length) throws IOException {
+        FileInputStream in = new FileInputStream(fd);
+        try {
+            return in.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, length);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            in.close();
+        }
+    }
+
+    private static File extract(Context context, String asset) throws IOException {
+        int version;
+        try {
+            version = context.getPackageManager().getPackageInfo(context.getPackageName(), 0).versionCode;
+        } catch (PackageManager.NameNotFoundException e) {
+            throw new IOException(e.getMessage());
+        }
+        File file = new File(context.getFilesDir(), version + "-" + asset);
+        if (file.exists()) return file;
+
+        File tmp = new File(file.getPath() + ".tmp");
+        InputStream in = context.getAssets().open(asset);
+        try {
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        if (!tmp.renameTo(file)) throw new IOException("Could not write " + file);
+        return file;
+    }
+}
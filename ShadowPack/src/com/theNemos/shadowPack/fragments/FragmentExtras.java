@@ -113,9 +113,7 @@ public class FragmentExtras extends Fragment  implements Tab.TabMenuListener<Tab
     	}
     };
     private void actRequest() {
-    	String pkg = getResources().getString(R.string.pkg);
-    	Intent iconrequest = new Intent(Intent.ACTION_MAIN);
-    	iconrequest.setComponent(new ComponentName(pkg,pkg+".IconRequest"));
+    	Intent iconrequest = new Intent(getActivity(), IconRequest.class);
 
     	try {        
             startActivity(iconrequest);
@@ -0,0 +1,100 @@
+/* This program is free software. It comes without any warranty, to
+ * the extent permitted by applicable law. You can redistribute it
+ * and/or modify it under the terms of the Do What The Fuck You Want
+ * To Public License, Version 2, as published by Sam Hocevar. See
+ * http://sam.zoy.org/wtfpl/COPYING for more details. */
+
+package com.theNemos.shadowPack.iconFragment;
+
+import com.theNemos.shadowPack.*;
+import com.theNemos.shadowPack.catalog.IconCatalog;
+
+import android.os.Bundle;
+import android.support.v4.app.Fragment;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.*;
+
+/**
+ * Shows the icons of one category from res/values/icon_categories.xml as a grid. {@link IconActivity} creates one
+ * of these per category, so a new category needs no new class.
+ */
+public class IconCategoryFragment extends Fragment implements AdapterView.OnItemClickListener, IconCatalog.Callback {
+
+    /**
+     * The key of the category to show, one of the icon_category_keys items.
+     */
+    public static final String ARG_CATEGORY = "category";
+
+    private GridView mGridView;
+    private View mProgress;
+    private View mError;
+
+    public static IconCategoryFragment newInstance(String category) {
+        IconCategoryFragment fragment = new IconCategoryFragment();
+        Bundle args = new Bundle();
+        args.putString(ARG_CATEGORY, category);
+        fragment.setArguments(args);
+        return fragment;
+    }
+
+    @Override
+    public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
+        View view = inflater.inflate(R.layout.icon_main, container, false);
+        mGridView = (GridView) view.findViewById(R.id.icon_grid);
+        mProgress = view.findViewById(R.id.icon_progress);
+        mError = view.findViewById(R.id.icon_error);
+        IconGridAdapter.configure(mGridView);
+        mGridView.setOnItemClickListener(this);
+        // The catalog loads off the main thread; the progress placeholder stays up until it is ready
+        IconCatalog.load(getActivity(), this);
+        return view;
+    }
+
+    @Override
+    public void onCatalogReady(IconCatalog catalog) {
+        if (mGridView == null) return;
+        int category = catalog.indexOfCategory(getArguments().getString(ARG_CATEGORY));
+        int[] icons = category >= 0 ? catalog.getIcons(category) : new int[0];
+        mGridView.setAdapter(new IconGridAdapter(getActivity(), icons, catalog.getAtlas(), category, getViewPool()));
+        mProgress.setVisibility(View.GONE);
+        mGridView.setVisibility(View.VISIBLE);
+        ((IconActivity) getActivity()).onPageReady();
+    }
+
+    @Override
+    public void onCatalogFailed() {
+        if (mGridView == null) return;
+        mProgress.setVisibility(View.GONE);
+        mError.setVisibility(View.VISIBLE);
+    }
+
+    /**
+     * Gets the grid of the page, or null while its view does not exist.
+     */
+    public GridView getGridView() {
+        return mGridView;
+    }
+
+    @Override
+    public void onDestroyView() {
+        IconCatalog.cancel(this);
+        if (mGridView.getAdapter() != null) {
+            getViewPool().recycle(mGridView);
+        }
+        mGridView = null;
+        mProgress = null;
+        mError = null;
+        super.onDestroyView();
+    }
+
+    private IconViewPool getViewPool() {
+        return ((IconActivity) getActivity()).getViewPool();
+    }
+
+    @Override
+    public void onItemClick(AdapterView<?> adapterView, View view, int i, long l) {
+        ((IconActivity) getActivity()).onIconClick((Integer) adapterView.getItemAtPosition(i));
+    }
+}
@@ -0,0 +1,141 @@
+package com.theNemos.shadowPack.iconFragment;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.drawable.Drawable;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.GridView;
+import android.widget.ImageView;
+
+import com.theNemos.shadowPack.R;
+import com.theNemos.shadowPack.bitmap.IconLoader;
+import com.theNemos.shadowPack.catalog.IconAtlas;
+
+/**
+ * The adapter behind every icon category grid. Items are drawable resource ids, decoded off the main thread by
+ * {@link IconLoader} at the size of the cells they are drawn in. A category page draws its icons out of the
+ * category's atlas when there is one, so the whole page costs one or two decodes. Grids set up with
+ * {@link #configure(GridView)} hold decodes back while flung and decode ahead once they stop, see
+ * {@link IconScrollListener}.
+ */
+public class IconGridAdapter extends BaseAdapter {
+
+    public static final int COLUMNS = 4;
+
+    private final Context mContext;
+    private final int[] mIcons;
+    private final IconAtlas mAtlas;
+    private final int mCategory;
+    private final int mSpacing;
+    private final IconViewPool mViewPool;
+    private final IconLoader mLoader;
+    private final Drawable mPlaceholder;
+    private int mCellSize;
+
+    public IconGridAdapter(Context context, int[] icons, IconViewPool viewPool) {
+        this(context, icons, null, -1, viewPool);
+    }
+
+    /**
+     * @param atlas    The icon atlases of the catalog, may be null.
+     * @param category The index of the category the icons are, whose atlas is drawn from.
+     */
+    public IconGridAdapter(Context context, int[] icons, IconAtlas atlas, int category, IconViewPool viewPool) {
+        mContext = context;
+        mIcons = icons;
+        mAtlas = atlas;
+        mCategory = category;
+        mSpacing = getSpacing(context.getResources());
+        mViewPool = viewPool;
+        mLoader = IconLoader.getInstance(context);
+        mPlaceholder = context.getResources().getDrawable(R.drawable.icon_placeholder);
+    }
+
+    /**
+     * Lays out a grid the way every icon grid in the app looks: {@link #COLUMNS} square cells sharing the width.
+     */
+    public static void configure(GridView grid) {
+        int spacing = getSpacing(grid.getResources());
+        grid.setNumColumns(COLUMNS);
+        grid.setStretchMode(GridView.STRETCH_COLUMN_WIDTH);
+        grid.setHorizontalSpacing(spacing);
+        grid.setVerticalSpacing(spacing);
+        grid.setOnScrollListener(new IconScrollListener(grid.getContext(),
+                grid.getResources().getInteger(R.integer.icon_prefetch_rows)));
+    }
+
+    /**
+     * Gets the size of the cells the grid was last drawn with, 0 before it has drawn any.
+     */
+    public int getCellSize() {
+        return mCellSize;
+    }
+
+    /**
+     * Decodes the icons of a range of positions into the cache at the size the cells were last drawn at, without
+     * binding them. Positions outside the grid are ignored.
+     */
+    public void prefetch(int from, int to) {
+        if (mCellSize <= 0) return;
+        for (int i = Math.max(0, from); i < Math.min(mIcons.length, to); i++) {
+            mLoader.prefetch(mCategory >= 0 ? mAtlas : null, mCategory, mIcons[i], mCellSize);
+        }
+    }
+
+    /**
+     * Works out the cell size of a grid set up by {@link #configure(GridView)} the same way GridView sizes its
+     * columns. Before the grid has been laid out this is the launcher icon size.
+     */
+    private int getCellSize(ViewGroup grid) {
+        int width = grid.getWidth() - grid.getPaddingLeft() - grid.getPaddingRight();
+        if (width <= 0) return mSpacing * 2;
+        return Math.max(1, (width - (COLUMNS - 1) * mSpacing) / COLUMNS);
+    }
+
+    private static int getSpacing(Resources res) {
+        return res.getDimensionPixelSize(android.R.dimen.app_icon_size) / 2;
+    }
+
+    @Override
+    public int getCount() {
+        return mIcons.length;
+    }
+
+    @Override
+    public Object getItem(int position) {
+        return mIcons[position];
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mIcons[position];
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        int cellSize = getCellSize(parent);
+        mCellSize = cellSize;
+        ImageView imageView;
+        if (convertView == null) {
+            imageView = mViewPool.obtain(mContext, cellSize);
+        } else {
+            imageView = (ImageView) convertView;
+            if (imageView.getLayoutParams().height != cellSize) {
+                imageView.setLayoutParams(new GridView.LayoutParams(cellSize, cellSize));
+            }
+        }
+        if (mAtlas != null && mCategory >= 0) {
+            mLoader.load(imageView, mAtlas, mCategory, mIcons[position], cellSize, mPlaceholder);
+        } else {
+            mLoader.load(imageView, mIcons[position], cellSize, mPlaceholder);
+        }
+        return imageView;
+    }
+}
@@ -0,0 +1,81 @@
+package com.theNemos.shadowPack.iconFragment;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.widget.AbsListView;
+import android.widget.GridView;
+
+import com.theNemos.shadowPack.bitmap.IconLoader;
+
+/**
+ * Lets the scrolling of an icon grid drive its decoding. While the grid is flung the {@link IconLoader} is paused,
+ * so only cached icons are shown; it resumes once the fling slows to less than a screen a second, or stops. When
+ * the grid comes to rest the next rows in the direction it was scrolled are decoded ahead.
+ */
+public class IconScrollListener implements AbsListView.OnScrollListener {
+
+    private final IconLoader mLoader;
+    private final int mRowsAhead;
+    private int mState = SCROLL_STATE_IDLE;
+    private boolean mPaused;
+    private boolean mScrollingDown = true;
+    private int mLastFirst;
+    private long mLastFirstTime;
+
+    /**
+     * @param rowsAhead How many rows past the screen to decode once the grid stops.
+     */
+    public IconScrollListener(Context context, int rowsAhead) {
+        mLoader = IconLoader.getInstance(context);
+        mRowsAhead = rowsAhead;
+    }
+
+    @Override
+    public void onScrollStateChanged(AbsListView view, int scrollState) {
+        mState = scrollState;
+        mLoader.cancelPrefetches();
+        if (scrollState == SCROLL_STATE_FLING) {
+            // The fling's rate is measured from here, not from whenever the grid last moved
+            mLastFirst = view.getFirstVisiblePosition();
+            mLastFirstTime = SystemClock.uptimeMillis();
+            mPaused = true;
+            mLoader.pause(view);
+            return;
+        }
+        resume(view);
+        if (scrollState == SCROLL_STATE_IDLE) prefetchAhead(view);
+    }
+
+    @Override
+    public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+        if (firstVisibleItem == mLastFirst) return;
+        long now = SystemClock.uptimeMillis();
+        if (mPaused && mState == SCROLL_STATE_FLING && visibleItemCount > 0) {
+            long elapsed = Math.max(1, now - mLastFirstTime);
+            if (Math.abs(firstVisibleItem - mLastFirst) * 1000L / elapsed < visibleItemCount) resume(view);
+        }
+        mScrollingDown = firstVisibleItem > mLastFirst;
+        mLastFirst = firstVisibleItem;
+        mLastFirstTime = now;
+    }
+
+    private void resume(AbsListView view) {
+        if (!mPaused) return;
+        mPaused = false;
+        mLoader.resume(view);
+    }
+
+    private void prefetchAhead(AbsListView view) {
+        if (!(view.getAdapter() instanceof IconGridAdapter) || mRowsAhead <= 0) return;
+        IconGridAdapter adapter = (IconGridAdapter) view.getAdapter();
+        int columns = view instanceof GridView ? Math.max(1, ((GridView) view).getNumColumns()) : 1;
+        int count = mRowsAhead * columns;
+        if (mScrollingDown) {
+            int from = view.getLastVisiblePosition() + 1;
+            adapter.prefetch(from, from + count);
+        } else {
+            int to = view.getFirstVisiblePosition();
+            adapter.prefetch(to - count, to);
+        }
+    }
+}
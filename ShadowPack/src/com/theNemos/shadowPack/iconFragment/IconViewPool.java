@@ -0,0 +1,61 @@
+package com.theNemos.shadowPack.iconFragment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.Context;
+import android.view.View;
+import android.widget.AbsListView;
+import android.widget.GridView;
+import android.widget.ImageView;
+
+import com.theNemos.shadowPack.bitmap.IconLoader;
+
+/**
+ * A pool of icon cells shared by every category page of an {@link com.theNemos.shadowPack.IconActivity}. When a
+ * page's view is destroyed its cells are returned here, and the next page to be created reuses them instead of
+ * inflating new ones.
+ */
+public class IconViewPool {
+
+    private static final int MAX_SIZE = 64;
+
+    private final List<ImageView> mViews = new ArrayList<ImageView>();
+
+    /**
+     * Gets a recycled cell, or a new one if the pool is empty.
+     */
+    public ImageView obtain(Context context, int cellSize) {
+        ImageView imageView;
+        int last = mViews.size() - 1;
+        if (last >= 0) {
+            imageView = mViews.remove(last);
+        } else {
+            imageView = new ImageView(context);
+        }
+        imageView.setLayoutParams(new GridView.LayoutParams(cellSize, cellSize));
+        return imageView;
+    }
+
+    /**
+     * Takes every cell held by a grid, on screen or in its own recycler, back into the pool.
+     */
+    public void recycle(AbsListView grid) {
+        IconLoader loader = IconLoader.getInstance(grid.getContext());
+        // A grid torn down mid-fling must not leave the loader paused
+        loader.resume(grid);
+        List<View> views = new ArrayList<View>();
+        grid.reclaimViews(views);
+        for (View view : views) {
+            if (!(view instanceof ImageView)) continue;
+            ImageView imageView = (ImageView) view;
+            loader.recycle(imageView);
+            if (mViews.size() >= MAX_SIZE) continue;
+            mViews.add(imageView);
+        }
+    }
+
+    public void clear() {
+        mViews.clear();
+    }
+}
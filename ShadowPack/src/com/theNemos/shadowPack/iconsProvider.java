@@ -1,40 +1,299 @@
 package com.theNemos.shadowPack;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import android.content.ContentProvider;
 import android.content.ContentValues;
 import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.support.v4.util.LruCache;
+import android.text.TextUtils;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import com.theNemos.shadowPack.bitmap.IconVariants;
+import com.theNemos.shadowPack.catalog.ComponentIconResolver;
+import com.theNemos.shadowPack.catalog.IconCatalog;
+import com.theNemos.shadowPack.catalog.IconCursor;
+import com.theNemos.shadowPack.catalog.IconIndex;
 
 public class iconsProvider extends ContentProvider{
+    // Must match the authority the provider is declared with in the manifest
+    public static final String AUTHORITY="com.theNemos.shadowPack.iconsProvider";
+    public static final Uri CONTENT_URI=Uri.parse("content://"+AUTHORITY);
+    public static final String PATH_COMPONENT="component";
+    // Query parameters asking for the icon at a size: either in pixels, or as a launcher icon at a screen density
+    public static final String PARAM_SIZE="size";
+    public static final String PARAM_DENSITY="density";
+    // Query parameter choosing the encoding of sized icons, png unless it is webp
+    public static final String PARAM_FORMAT="format";
+    public static final String FORMAT_WEBP="webp";
+    // Query parameters of the icon list at the root uri, see IconCursor for the columns
+    public static final String PARAM_CATEGORY="category";
+    public static final String PARAM_PREFIX="prefix";
+    public static final String PARAM_LIMIT="limit";
+    public static final String PARAM_OFFSET="offset";
+    // call() method taking the names and content hashes a client has, see getChangedIcons
+    public static final String METHOD_GET_CHANGED="getChangedIcons";
+    public static final String EXTRA_NAMES="names";
+    // A long[] of the content_hash values read from query() with Cursor#getLong, one per name. They are unsigned
+    // 32-bit values, as IconCursor publishes them
+    public static final String EXTRA_CONTENT_HASHES="contentHashes";
+    public static final String EXTRA_MISSING="missing";
+    // call() method reporting how long the provider took from creation to its first descriptor, see recordStartup
+    public static final String METHOD_GET_STARTUP="getStartupStats";
+    public static final String EXTRA_FIRST_DESCRIPTOR_MILLIS="firstDescriptorMillis";
+    public static final String EXTRA_BUDGET_MILLIS="budgetMillis";
+    private static final String TAG="iconsProvider";
+    private static final int LAUNCHER_ICON_DP=48;
+    // Enough for every app of a large launcher, an LRU that is smaller than one refresh misses on every lookup
+    private static final int MAX_MISSES=1024;
+    // A launcher starting the process for one icon should have it within this long of the provider being created.
+    // Mapping the index and opening one APK entry is all that should happen in between
+    private static final long STARTUP_BUDGET_MILLIS=50;
+    // A first request arriving later than this after creation is not what started the process, see recordStartup
+    private static final long COLD_START_WINDOW_MILLIS=1000;
+
+    // Uri paths that named no icon. The pack cannot change while the process lives, so entries never go stale and
+    // are only evicted, least recently asked for first, to bound the cache
+    private final LruCache<String,Boolean> mMisses=new LruCache<String,Boolean>(MAX_MISSES);
+    private final AtomicBoolean mStartupRecorded=new AtomicBoolean();
+    private long mCreatedAt;
+    private volatile long mFirstDescriptorMillis=-1;
+
+    // Launchers start the whole process just to read an icon, and providers are created before the application
+    // is, so this does nothing but note the time. The index, the appfilter table and the icon variants are each
+    // set up by the first request that needs them, and the catalog is only built for query(); nothing on the
+    // descriptor path loads a UI class
     @Override
     public boolean onCreate() {
-        return false;
+        mCreatedAt=SystemClock.elapsedRealtime();
+        return true;
     }
 
+    // content://<authority>?category=<key>&prefix=<name prefix>&limit=<n>&offset=<n> lists the pack in name order,
+    // the selection and sort order are not used
     @Override
-    public Cursor query(Uri uri, String[] strings, String s, String[] strings1, String s1) {
-        return null;
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        if(!uri.getPathSegments().isEmpty()){
+            return null;
+        }
+        try{
+            IconCatalog catalog=IconCatalog.await(getContext());
+            if(catalog==null){
+                return null;
+            }
+            String prefix=uri.getQueryParameter(PARAM_PREFIX);
+            return IconCursor.query(catalog,CONTENT_URI.toString(),projection,uri.getQueryParameter(PARAM_CATEGORY),
+                    TextUtils.isEmpty(prefix) ? null : prefix,getIntParameter(uri,PARAM_OFFSET,0),
+                    getIntParameter(uri,PARAM_LIMIT,-1));
+        }catch (InterruptedException e){
+            return null;
+        }
+    }
+
+    private static int getIntParameter(Uri uri, String name, int defaultValue){
+        String value=uri.getQueryParameter(name);
+        if(TextUtils.isEmpty(value) || !TextUtils.isDigitsOnly(value) || value.length()>9){
+            return defaultValue;
+        }
+        return Integer.parseInt(value);
     }
 
     @Override
     public String getType(Uri uri) {
+        if(getRequestedSize(uri)>0){
+            return isWebp(uri) ? "image/webp" : "image/png";
+        }
         return "image/*";
     }
 
     @Override
     public AssetFileDescriptor openAssetFile(Uri uri, String mode) throws FileNotFoundException {
-        if(uri.getPathSegments().size()>0){
+        long requestedAt=mStartupRecorded.get() ? 0 : SystemClock.elapsedRealtime();
+        AssetFileDescriptor afd=openIcon(uri);
+        if(afd!=null && requestedAt!=0){
+            recordStartup(requestedAt);
+        }
+        return afd;
+    }
+
+    private AssetFileDescriptor openIcon(Uri uri) throws FileNotFoundException {
+        List<String> segments=uri.getPathSegments();
+        String path=uri.getPath();
+        if(segments.isEmpty() || mMisses.get(path)!=null){
+            return null;
+        }
+        int resId=resolve(segments);
+        if(resId<=0){
+            if(resId==0){
+                rememberMiss(path);
+            }
+            return null;
+        }
+        int size=getRequestedSize(uri);
+        if(size>0){
+            // content://<authority>/<icon>?size=<px> or ?density=<dpi>, scaled once and then served from cache
             try{
-                int resId=Integer.valueOf(uri.getPathSegments().get(0));
-                return this.getContext().getResources().openRawResourceFd(resId);
-            }catch (Throwable t){
-                return null;
+                ParcelFileDescriptor pfd=IconVariants.getInstance(getContext()).open(resId,size,isWebp(uri));
+                return new AssetFileDescriptor(pfd,0,AssetFileDescriptor.UNKNOWN_LENGTH);
+            }catch (IOException e){
+                throw new FileNotFoundException("Could not open "+uri+": "+e.getMessage());
+            }
+        }
+        // The build stores icons uncompressed and page aligned (see ApkAligner in tools/), so this hands out the
+        // APK's own descriptor and nothing is copied. Should an entry still be compressed, or not be a bitmap, it is
+        // copied to a cache file instead
+        try{
+            return getContext().getResources().openRawResourceFd(resId);
+        }catch (Resources.NotFoundException notStored){
+            // Compressed entries and XML drawables both end up here
+        }
+        try{
+            ParcelFileDescriptor pfd=IconVariants.getInstance(getContext()).openOriginal(resId);
+            return new AssetFileDescriptor(pfd,0,AssetFileDescriptor.UNKNOWN_LENGTH);
+        }catch (Resources.NotFoundException e){
+            throw new FileNotFoundException("Could not open "+uri);
+        }catch (IOException e){
+            throw new FileNotFoundException("Could not open "+uri+": "+e.getMessage());
+        }
+    }
+
+    // The icon a uri path names, 0 if the pack has none, or -1 if that could not be told right now.
+    // content://<authority>/<drawable name> is the stable address; names are looked up in the memory-mapped icon
+    // index, which is built at compile time and mapped on the first lookup without waiting for the catalog. After
+    // that Binder threads read it without taking any lock
+    private int resolve(List<String> segments){
+        String segment=segments.get(0);
+        if(PATH_COMPONENT.equals(segment)){
+            if(segments.size()!=3){
+                return 0;
+            }
+            // content://<authority>/component/<package>/<activity class>
+            try{
+                return ComponentIconResolver.getInstance(getContext()).resolve(segments.get(1),segments.get(2));
+            }catch (IOException e){
+                return -1;
+            }
+        }
+        if(segments.size()!=1){
+            return 0;
+        }
+        IconIndex index;
+        try{
+            index=IconIndex.getInstance(getContext());
+        }catch (IOException e){
+            Log.e(TAG,"Could not open "+IconIndex.ASSET,e);
+            return -1;
+        }
+        if(TextUtils.isDigitsOnly(segment)){
+            // Resource ids, as older clients were handed. They change between builds, names do not. Only the pack's
+            // icons are served, not any resource that happens to have the requested id
+            if(segment.length()>10){
+                return 0;
             }
+            long id=Long.parseLong(segment);
+            return id<=Integer.MAX_VALUE && index.indexOf((int) id)>=0 ? (int) id : 0;
+        }
+        int position=index.find(segment);
+        return position<0 ? 0 : index.getResId(position);
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras){
+        if(METHOD_GET_CHANGED.equals(method) && extras!=null){
+            return getChangedIcons(extras.getStringArray(EXTRA_NAMES),extras.getLongArray(EXTRA_CONTENT_HASHES));
+        }
+        if(METHOD_GET_STARTUP.equals(method)){
+            // -1 until the first descriptor has been served
+            Bundle result=new Bundle();
+            result.putLong(EXTRA_FIRST_DESCRIPTOR_MILLIS,mFirstDescriptorMillis);
+            result.putLong(EXTRA_BUDGET_MILLIS,STARTUP_BUDGET_MILLIS);
+            return result;
+        }
+        return null;
+    }
+
+    // Records how long after the provider was created the first descriptor went out, and warns when that is over
+    // budget so a change that makes the cold path heavier shows up in the log. If the process was started for
+    // something else and the first icon is asked for much later, the figure is kept but measures nothing of ours
+    private void recordStartup(long requestedAt){
+        if(!mStartupRecorded.compareAndSet(false,true)){
+            return;
+        }
+        long elapsed=SystemClock.elapsedRealtime()-mCreatedAt;
+        mFirstDescriptorMillis=elapsed;
+        if(requestedAt-mCreatedAt>COLD_START_WINDOW_MILLIS){
+            return;
+        }
+        if(elapsed>STARTUP_BUDGET_MILLIS){
+            Log.w(TAG,"First icon took "+elapsed+"ms from start, over the "+STARTUP_BUDGET_MILLIS+"ms budget");
         }else{
+            Log.i(TAG,"First icon took "+elapsed+"ms from start");
+        }
+    }
+
+    // The conditional fetch: a client passes the names and content_hash values it got from query() before an
+    // update and gets back only the names whose icon changed, under EXTRA_NAMES, and those the pack no longer has,
+    // under EXTRA_MISSING. Everything else is not modified and is answered from the index without opening a file
+    private Bundle getChangedIcons(String[] names, long[] hashes){
+        if(names==null || hashes==null || names.length!=hashes.length){
+            throw new IllegalArgumentException(EXTRA_NAMES+" and "+EXTRA_CONTENT_HASHES+" must be of equal length");
+        }
+        IconIndex index;
+        try{
+            index=IconIndex.getInstance(getContext());
+        }catch (IOException e){
+            Log.e(TAG,"Could not open "+IconIndex.ASSET,e);
             return null;
         }
+        List<String> changed=new ArrayList<String>();
+        List<String> missing=new ArrayList<String>();
+        for(int i=0;i<names.length;i++){
+            int position=names[i]!=null ? index.find(names[i]) : -1;
+            if(position<0){
+                missing.add(names[i]);
+            }else if((index.getContentHash(position)&0xffffffffL)!=hashes[i]){
+                changed.add(names[i]);
+            }
+        }
+        Bundle result=new Bundle();
+        result.putStringArray(EXTRA_NAMES,changed.toArray(new String[changed.size()]));
+        result.putStringArray(EXTRA_MISSING,missing.toArray(new String[missing.size()]));
+        return result;
+    }
+
+    // Launchers ask again for the apps the pack does not theme on every refresh; those are answered from here
+    private void rememberMiss(String path){
+        mMisses.put(path,Boolean.TRUE);
+    }
+
+    // The pixel size asked for in the uri, 0 for the icon as it is packaged
+    private static int getRequestedSize(Uri uri){
+        int size=0;
+        String value=uri.getQueryParameter(PARAM_SIZE);
+        if(!TextUtils.isEmpty(value) && TextUtils.isDigitsOnly(value) && value.length()<6){
+            size=Integer.parseInt(value);
+        }else{
+            value=uri.getQueryParameter(PARAM_DENSITY);
+            if(!TextUtils.isEmpty(value) && TextUtils.isDigitsOnly(value) && value.length()<6){
+                size=Math.round(LAUNCHER_ICON_DP*Integer.parseInt(value)/(float)DisplayMetrics.DENSITY_DEFAULT);
+            }
+        }
+        return Math.min(size,IconVariants.MAX_SIZE);
+    }
+
+    private static boolean isWebp(Uri uri){
+        return FORMAT_WEBP.equals(uri.getQueryParameter(PARAM_FORMAT));
     }
 
     @Override
@@ -0,0 +1,100 @@
+package com.theNemos.shadowPack.picker;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.AsyncTask;
+
+import com.theNemos.shadowPack.bitmap.IconBitmapCache;
+import com.theNemos.shadowPack.iconsProvider;
+
+/**
+ * The result every icon grid hands back when a launcher started it to pick an icon. The result names the icon
+ * rather than carrying it: the data is the icon's {@link iconsProvider} URI, readable by the caller, and
+ * Intent#EXTRA_SHORTCUT_ICON_RESOURCE points at the drawable. A bitmap is added under {@link #EXTRA_ICON} only
+ * for callers that read one, and then at the size they asked for, so results stay far below the Binder
+ * transaction limit.
+ * <p/>
+ * ADW-style launchers read the bitmap, at their icon size unless they pass {@link #EXTRA_ICON_SIZE}. Other callers
+ * get one by passing {@link #EXTRA_ICON_SIZE}. Passing {@link #EXTRA_RETURN_DATA} false leaves it out either way.
+ */
+public final class IconPicker {
+
+    public static final String ACTION_ADW_PICK_ICON = "org.adw.launcher.icons.ACTION_PICK_ICON";
+
+    /**
+     * The result extra holding the icon bitmap, if the caller needs one.
+     */
+    public static final String EXTRA_ICON = "icon";
+
+    /**
+     * The size in pixels the caller wants the bitmap at.
+     */
+    public static final String EXTRA_ICON_SIZE = "iconSize";
+
+    /**
+     * False if the caller does not want a bitmap at all.
+     */
+    public static final String EXTRA_RETURN_DATA = "return-data";
+
+    private IconPicker() {
+    }
+
+    /**
+     * Gets whether an activity was started to pick an icon.
+     */
+    public static boolean isPickRequest(Intent request) {
+        String action = request != null ? request.getAction() : null;
+        return ACTION_ADW_PICK_ICON.equals(action) || Intent.ACTION_PICK.equals(action) ||
+                Intent.ACTION_GET_CONTENT.equals(action);
+    }
+
+    /**
+     * Sets the result of a picker activity to an icon and finishes it. If the caller needs a bitmap it is decoded
+     * in the background first, so nothing is decoded on the main thread.
+     */
+    public static void deliver(final Activity activity, final int resId) {
+        final Intent result = new Intent();
+        // Addressed by name, which unlike the resource id stays the same across builds
+        result.setData(Uri.withAppendedPath(iconsProvider.CONTENT_URI,
+                activity.getResources().getResourceEntryName(resId)));
+        result.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        result.putExtra(Intent.EXTRA_SHORTCUT_ICON_RESOURCE,
+                Intent.ShortcutIconResource.fromContext(activity, resId));
+
+        final int size = getRequestedSize(activity);
+        if (size <= 0) {
+            activity.setResult(Activity.RESULT_OK, result);
+            activity.finish();
+            return;
+        }
+        final IconBitmapCache cache = IconBitmapCache.getInstance(activity);
+        new AsyncTask<Void, Void, Bitmap>() {
+            @Override
+            protected Bitmap doInBackground(Void... params) {
+                return cache.get(activity.getResources(), resId, size);
+            }
+
+            @Override
+            protected void onPostExecute(Bitmap bitmap) {
+                if (activity.isFinishing()) return;
+                if (bitmap != null) result.putExtra(EXTRA_ICON, bitmap);
+                activity.setResult(Activity.RESULT_OK, result);
+                activity.finish();
+            }
+        }.execute();
+    }
+
+    /**
+     * Gets the size the caller wants a bitmap at, or 0 if it does not want one.
+     */
+    private static int getRequestedSize(Activity activity) {
+        Intent request = activity.getIntent();
+        if (!request.getBooleanExtra(EXTRA_RETURN_DATA, true)) return 0;
+        int size = request.getIntExtra(EXTRA_ICON_SIZE, 0);
+        if (size > 0) return size;
+        if (!ACTION_ADW_PICK_ICON.equals(request.getAction())) return 0;
+        return activity.getResources().getDimensionPixelSize(android.R.dimen.app_icon_size);
+    }
+}
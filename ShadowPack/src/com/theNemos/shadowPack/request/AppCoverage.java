@@ -0,0 +1,57 @@
+package com.theNemos.shadowPack.request;
+
+import android.content.ComponentName;
+
+/**
+ * Whether the pack themes one launcher activity installed on the device.
+ */
+public class AppCoverage {
+
+    /**
+     * The pack has an icon for this exact activity.
+     */
+    public static final int MATCHED = 0;
+    /**
+     * The pack themes other activities of the same package, but not this one, e.g. after the app renamed its
+     * launcher activity.
+     */
+    public static final int PARTIAL = 1;
+    /**
+     * The pack knows nothing about this app.
+     */
+    public static final int UNMATCHED = 2;
+
+    private final ComponentName mComponent;
+    private final CharSequence mLabel;
+    private final int mStatus;
+    private final int mIconRes;
+
+    public AppCoverage(ComponentName component, CharSequence label, int status, int iconRes) {
+        mComponent = component;
+        mLabel = label;
+        mStatus = status;
+        mIconRes = iconRes;
+    }
+
+    public ComponentName getComponent() {
+        return mComponent;
+    }
+
+    public CharSequence getLabel() {
+        return mLabel;
+    }
+
+    /**
+     * Gets one of {@link #MATCHED}, {@link #PARTIAL} or {@link #UNMATCHED}.
+     */
+    public int getStatus() {
+        return mStatus;
+    }
+
+    /**
+     * Gets the pack's drawable for this activity, or 0 unless the status is {@link #MATCHED}.
+     */
+    public int getIconRes() {
+        return mIconRes;
+    }
+}
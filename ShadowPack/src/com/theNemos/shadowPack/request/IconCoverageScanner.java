@@ -0,0 +1,214 @@
+package com.theNemos.shadowPack.request;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ActivityInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.theNemos.shadowPack.catalog.ComponentIconResolver;
+
+/**
+ * Finds out which of the launcher activities installed on the device the pack themes. The scan runs on a small
+ * bounded pool of worker threads, each resolving a slice of the apps against the compiled appfilter and loading
+ * their labels, and reports progress and the result on the main thread. Nothing is done on the main thread.
+ */
+public class IconCoverageScanner {
+
+    private static final String TAG = "IconCoverageScanner";
+    private static final int MAX_WORKERS = 4;
+    private static final int CHUNK_SIZE = 16;
+
+    /**
+     * Receives scan progress and results on the main thread.
+     */
+    public interface Listener {
+
+        public void onScanProgress(int done, int total);
+
+        /**
+         * Called once with every launcher activity, unthemed ones first and then by label.
+         */
+        public void onScanFinished(List<AppCoverage> apps);
+
+        public void onScanFailed(Exception e);
+    }
+
+    private final Context mContext;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private volatile boolean mCancelled;
+    private ExecutorService mExecutor;
+
+    public IconCoverageScanner(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    public void start(final Listener listener) {
+        mCancelled = false;
+        final ExecutorService executor = createExecutor();
+        mExecutor = executor;
+        // The coordinating thread sits outside the pool so it can wait on the slices it hands out
+        Thread scanner = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                try {
+                    final List<AppCoverage> apps = scan(executor, listener);
+                    if (apps == null) return;
+                    mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (!mCancelled) listener.onScanFinished(apps);
+                        }
+                    });
+                } catch (final Exception e) {
+                    if (mCancelled) return;
+                    Log.e(TAG, "Icon coverage scan failed", e);
+                    mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (!mCancelled) listener.onScanFailed(e);
+                        }
+                    });
+                } finally {
+                    executor.shutdown();
+                }
+            }
+        }, "IconCoverage");
+        scanner.start();
+    }
+
+    /**
+     * Stops the scan; no more listener calls are made after this returns.
+     */
+    public void cancel() {
+        mCancelled = true;
+        if (mExecutor == null) return;
+        // shutdownNow() only hands back the slices that never started. Cancel them, or the scanning thread would
+        // wait on their futures forever
+        for (Runnable slice : mExecutor.shutdownNow()) {
+            if (slice instanceof Future) ((Future<?>) slice).cancel(false);
+        }
+    }
+
+    private List<AppCoverage> scan(ExecutorService executor, final Listener listener) throws Exception {
+        final PackageManager pm = mContext.getPackageManager();
+        final ComponentIconResolver resolver = ComponentIconResolver.getInstance(mContext);
+        Intent launcher = new Intent(Intent.ACTION_MAIN);
+        launcher.addCategory(Intent.CATEGORY_LAUNCHER);
+        final List<ResolveInfo> infos = pm.queryIntentActivities(launcher, 0);
+        final int total = infos.size();
+        final AtomicInteger done = new AtomicInteger();
+        postProgress(listener, 0, total);
+
+        // The scanning thread resolves the last slice itself while the pool works on the others
+        List<Future<List<AppCoverage>>> slices = new ArrayList<Future<List<AppCoverage>>>();
+        int sliceSize = Math.max(CHUNK_SIZE, (total + MAX_WORKERS - 1) / MAX_WORKERS);
+        List<AppCoverage> apps = new ArrayList<AppCoverage>(total);
+        for (int start = 0; start < total; start += sliceSize) {
+            final int from = start;
+            final int to = Math.min(total, start + sliceSize);
+            if (to == total) {
+                apps.addAll(resolveSlice(pm, resolver, infos, from, to, done, listener));
+            } else {
+                slices.add(executor.submit(new Callable<List<AppCoverage>>() {
+                    @Override
+                    public List<AppCoverage> call() {
+                        return resolveSlice(pm, resolver, infos, from, to, done, listener);
+                    }
+                }));
+            }
+        }
+        for (Future<List<AppCoverage>> slice : slices) {
+            if (mCancelled) return null;
+            try {
+                apps.addAll(slice.get());
+            } catch (CancellationException e) {
+                return null;
+            }
+        }
+        if (mCancelled) return null;
+
+        Collections.sort(apps, new Comparator<AppCoverage>() {
+            @Override
+            public int compare(AppCoverage a, AppCoverage b) {
+                if (a.getStatus() != b.getStatus()) return b.getStatus() - a.getStatus();
+                return a.getLabel().toString().compareToIgnoreCase(b.getLabel().toString());
+            }
+        });
+        return apps;
+    }
+
+    private List<AppCoverage> resolveSlice(PackageManager pm, ComponentIconResolver resolver, List<ResolveInfo> infos,
+                                           int from, int to, AtomicInteger done, Listener listener) {
+        List<AppCoverage> result = new ArrayList<AppCoverage>(to - from);
+        for (int i = from; i < to && !mCancelled; i++) {
+            ActivityInfo activity = infos.get(i).activityInfo;
+            int iconRes = resolver.resolve(activity.packageName, activity.name);
+            int status;
+            if (iconRes != 0) {
+                status = AppCoverage.MATCHED;
+            } else if (resolver.hasPackage(activity.packageName)) {
+                status = AppCoverage.PARTIAL;
+            } else {
+                status = AppCoverage.UNMATCHED;
+            }
+            CharSequence label = infos.get(i).loadLabel(pm);
+            result.add(new AppCoverage(new ComponentName(activity.packageName, activity.name),
+                    label != null ? label : activity.name, status, iconRes));
+
+            int count = done.incrementAndGet();
+            if (count % CHUNK_SIZE == 0 || count == infos.size()) postProgress(listener, count, infos.size());
+        }
+        return result;
+    }
+
+    private void postProgress(final Listener listener, final int done, final int total) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!mCancelled) listener.onScanProgress(done, total);
+            }
+        });
+    }
+
+    private static ExecutorService createExecutor() {
+        int workers = Math.max(1, Math.min(MAX_WORKERS, Runtime.getRuntime().availableProcessors()));
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(workers, workers, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "IconCoverage #" + mCount.incrementAndGet());
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,185 @@
+package com.theNemos.shadowPack.request;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.support.v4.content.FileProvider;
+
+/**
+ * Writes an icon request: a zip with the launcher icon of every selected app as a PNG, plus an appfilter.xml
+ * snippet mapping the apps to those PNGs.
+ * <p/>
+ * Icons are loaded on a few worker threads and encoded straight into the zip on the calling thread, in order.
+ * Only a small window of icons is in flight at any time, so memory stays bounded however many apps are selected.
+ */
+public class IconRequestArchive {
+
+    /**
+     * The authority of the FileProvider declared in the manifest for request archives.
+     */
+    public static final String AUTHORITY = "com.theNemos.shadowPack.requests";
+
+    private static final String FOLDER = "requests";
+    private static final String FILE_NAME = "icon_request.zip";
+    private static final int WORKERS = 2;
+    private static final int WINDOW = WORKERS * 2;
+    private static final int MAX_ICON_SIZE = 512;
+
+    private final Context mContext;
+    private final PackageManager mPackageManager;
+
+    public IconRequestArchive(Context context) {
+        mContext = context.getApplicationContext();
+        mPackageManager = mContext.getPackageManager();
+    }
+
+    /**
+     * Writes the archive for the given apps, replacing the previous one. Call this off the main thread.
+     *
+     * @return A content URI other apps can be granted read access to.
+     */
+    public Uri write(List<AppCoverage> apps) throws IOException, InterruptedException {
+        File folder = new File(mContext.getCacheDir(), FOLDER);
+        if (!folder.isDirectory() && !folder.mkdirs()) throw new IOException("Could not create " + folder);
+        File file = new File(folder, FILE_NAME);
+
+        ExecutorService executor = Executors.newFixedThreadPool(WORKERS);
+        ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            zip.setLevel(Deflater.BEST_SPEED);
+            String[] drawables = drawableNames(apps);
+            boolean[] written = new boolean[apps.size()];
+
+            // A sliding window of icon loads: the next one is only started once the oldest has been written
+            ArrayDeque<Future<Bitmap>> window = new ArrayDeque<Future<Bitmap>>(WINDOW);
+            int next = 0;
+            for (int i = 0; i < apps.size(); i++) {
+                while (next < apps.size() && window.size() < WINDOW) {
+                    window.add(executor.submit(loadIcon(apps.get(next).getComponent())));
+                    next++;
+                }
+                Bitmap icon = getIcon(window.poll());
+                if (icon == null) continue;
+                zip.putNextEntry(new ZipEntry(drawables[i] + ".png"));
+                icon.compress(Bitmap.CompressFormat.PNG, 100, zip);
+                zip.closeEntry();
+                icon.recycle();
+                written[i] = true;
+            }
+
+            zip.putNextEntry(new ZipEntry("appfilter.xml"));
+            Writer writer = new OutputStreamWriter(zip, "UTF-8");
+            for (int i = 0; i < apps.size(); i++) {
+                // Apps whose icon could not be exported would map to a drawable the zip does not have
+                if (!written[i]) continue;
+                ComponentName component = apps.get(i).getComponent();
+                writer.write("<!-- " + escapeComment(apps.get(i).getLabel().toString()) + " -->\n");
+                writer.write("<item component=\"ComponentInfo{" + component.getPackageName() + "/" +
+                        component.getClassName() + "}\" drawable=\"" + drawables[i] + "\" />\n");
+            }
+            writer.flush();
+            zip.closeEntry();
+        } finally {
+            executor.shutdownNow();
+            zip.close();
+        }
+        return FileProvider.getUriForFile(mContext, AUTHORITY, file);
+    }
+
+    private Callable<Bitmap> loadIcon(final ComponentName component) {
+        return new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() throws Exception {
+                Drawable drawable = mPackageManager.getActivityIcon(component);
+                if (drawable instanceof BitmapDrawable) {
+                    Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+                    int largest = Math.max(bitmap.getWidth(), bitmap.getHeight());
+                    if (largest > MAX_ICON_SIZE) {
+                        return Bitmap.createScaledBitmap(bitmap, scale(bitmap.getWidth(), largest),
+                                scale(bitmap.getHeight(), largest), true);
+                    }
+                    // Drawables come from the other app's resources, copy so recycling after writing is safe
+                    return bitmap.copy(Bitmap.Config.ARGB_8888, false);
+                }
+                int width = Math.max(1, drawable.getIntrinsicWidth());
+                int height = Math.max(1, drawable.getIntrinsicHeight());
+                int largest = Math.max(width, height);
+                if (largest > MAX_ICON_SIZE) {
+                    width = scale(width, largest);
+                    height = scale(height, largest);
+                }
+                Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                drawable.setBounds(0, 0, width, height);
+                drawable.draw(new Canvas(bitmap));
+                return bitmap;
+            }
+        };
+    }
+
+    // Scales one side of an icon whose larger side is largest so that side becomes MAX_ICON_SIZE
+    private static int scale(int side, int largest) {
+        return Math.max(1, side * MAX_ICON_SIZE / largest);
+    }
+
+    /**
+     * Makes an app label safe to put in an XML comment, which may not contain "--" or end in "-".
+     */
+    private static String escapeComment(String label) {
+        String escaped = label.replaceAll("\\p{Cntrl}", " ").replaceAll("-{2,}", "-");
+        while (escaped.endsWith("-")) escaped = escaped.substring(0, escaped.length() - 1);
+        return escaped;
+    }
+
+    private static Bitmap getIcon(Future<Bitmap> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            // The app was uninstalled since the scan, or its icon can't be loaded; leave it out
+            return null;
+        }
+    }
+
+    /**
+     * Turns app labels into unique drawable names, e.g. "Google Maps" into "google_maps".
+     */
+    private static String[] drawableNames(List<AppCoverage> apps) {
+        String[] names = new String[apps.size()];
+        Set<String> used = new HashSet<String>();
+        for (int i = 0; i < names.length; i++) {
+            String base = apps.get(i).getLabel().toString().toLowerCase(Locale.US)
+                    .replaceAll("[^a-z0-9]+", "_").replaceAll("^_+|_+$", "");
+            if (base.length() == 0 || !Character.isLetter(base.charAt(0))) base = "app_" + base;
+            String name = base;
+            for (int n = 2; !used.add(name); n++) {
+                name = base + "_" + n;
+            }
+            names[i] = name;
+        }
+        return names;
+    }
+}
@@ -0,0 +1,187 @@
+package com.theNemos.shadowPack.service;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import android.app.Service;
+import android.content.ComponentName;
+import android.content.Intent;
+import android.os.IBinder;
+import android.os.ParcelFileDescriptor;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.theNemos.shadowPack.bitmap.IconVariants;
+import com.theNemos.shadowPack.catalog.ComponentIconResolver;
+import com.theNemos.shadowPack.catalog.IconIndex;
+
+/**
+ * Hands launchers a whole batch of icons over one Binder call instead of one iconsProvider file per app. The icons
+ * are encoded at the requested size (see {@link IconVariants}, which also caches them) and packed into a single
+ * region whose descriptor is returned; the launcher maps it and reads every icon out of it.
+ * <p/>
+ * All values in the region are big-endian. The layout is:
+ * <pre>
+ * header  magic 'SPBK', version, icon count  (3 ints)
+ * table   icon count records in request order: offset (int), length (int); length 0 if there is no icon, and
+ *         offset {@link #OFFSET_PENDING} as well if the icon was not encoded yet
+ * data    the encoded icons
+ * </pre>
+ * Icons that are already cached are always returned. Only {@link #MAX_ENCODES_PER_CALL} others are encoded per call,
+ * on the bounded {@link IconVariants} pool, so no caller can keep the Binder thread or the pool busy for long. Ask
+ * for pending icons again in a later call.
+ * <p/>
+ * Bind with the {@link #ACTION_BIND} action.
+ */
+public class IconBulkService extends Service {
+
+    public static final String ACTION_BIND = "com.theNemos.shadowPack.action.BULK_ICONS";
+
+    /**
+     * The most icons one call may ask for, larger batches have to be split.
+     */
+    public static final int MAX_BATCH = 512;
+
+    /**
+     * The most icons one call encodes, the rest of the icons that are not cached yet come back pending.
+     */
+    public static final int MAX_ENCODES_PER_CALL = 16;
+
+    /**
+     * The offset of an icon that was not encoded in this call.
+     */
+    public static final int OFFSET_PENDING = -1;
+
+    private static final String TAG = "IconBulkService";
+    private static final String REGION_PREFIX = "icons";
+    private static final String REGION_SUFFIX = ".bin";
+    private static final int MAGIC = 0x5350424b;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 12;
+    private static final int RECORD_SIZE = 8;
+
+    private final IIconBulkService.Stub mBinder = new IIconBulkService.Stub() {
+        @Override
+        public ParcelFileDescriptor getIconsForComponents(String[] components, int size, boolean webp)
+                throws RemoteException {
+            checkBatch(components);
+            int[] ids = new int[components.length];
+            try {
+                ComponentIconResolver resolver = ComponentIconResolver.getInstance(IconBulkService.this);
+                for (int i = 0; i < components.length; i++) {
+                    ComponentName component = components[i] != null ?
+                            ComponentName.unflattenFromString(components[i]) : null;
+                    ids[i] = component != null ? resolver.resolve(component) : 0;
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Could not open the appfilter table", e);
+            }
+            return pack(ids, size, webp);
+        }
+
+        @Override
+        public ParcelFileDescriptor getIconsByName(String[] names, int size, boolean webp) throws RemoteException {
+            checkBatch(names);
+            int[] ids = new int[names.length];
+            try {
+                // The mapped index answers name lookups by itself, so a batch never waits for the catalog to load
+                IconIndex index = IconIndex.getInstance(IconBulkService.this);
+                for (int i = 0; i < names.length; i++) {
+                    int position = names[i] != null ? index.find(names[i]) : -1;
+                    ids[i] = position >= 0 ? index.getResId(position) : 0;
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Could not open " + IconIndex.ASSET, e);
+            }
+            return pack(ids, size, webp);
+        }
+    };
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // Regions are unlinked as soon as they are opened, so any left over are from a process that died mid-write
+        File[] files = getCacheDir().listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(REGION_PREFIX) && name.endsWith(REGION_SUFFIX)) file.delete();
+        }
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return mBinder;
+    }
+
+    private static void checkBatch(String[] keys) {
+        if (keys == null || keys.length > MAX_BATCH) {
+            throw new IllegalArgumentException("Batches hold 0 to " + MAX_BATCH + " icons");
+        }
+    }
+
+    /**
+     * Encodes the icons and writes them into one region, see the class comment for the layout. Each icon is written
+     * out as soon as it is encoded and the table filled in last, so only one encoded icon is held at a time.
+     * <p/>
+     * The region is a cache file that is unlinked once opened, which the caller can map like shared memory and
+     * which goes away with the last descriptor. Unlike an ashmem region it does not need its size up front.
+     */
+    private ParcelFileDescriptor pack(int[] ids, int size, boolean webp) {
+        IconVariants variants = IconVariants.getInstance(this);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + ids.length * RECORD_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(ids.length);
+        try {
+            File file = File.createTempFile(REGION_PREFIX, REGION_SUFFIX, getCacheDir());
+            try {
+                RandomAccessFile region = new RandomAccessFile(file, "rw");
+                try {
+                    int offset = header.capacity();
+                    int encodes = 0;
+                    region.seek(offset);
+                    for (int id : ids) {
+                        if (id == 0) {
+                            header.putInt(0).putInt(0);
+                            continue;
+                        }
+                        byte[] icon = variants.loadCached(id, size, webp);
+                        boolean pending = false;
+                        if (icon == null) {
+                            if (encodes < MAX_ENCODES_PER_CALL) {
+                                encodes++;
+                                try {
+                                    icon = variants.load(id, size, webp);
+                                } catch (FileNotFoundException busy) {
+                                    // The pool is full, the icon stays pending
+                                    pending = true;
+                                }
+                            } else {
+                                pending = true;
+                            }
+                        }
+                        if (icon == null) {
+                            header.putInt(pending ? OFFSET_PENDING : 0).putInt(0);
+                            continue;
+                        }
+                        header.putInt(offset).putInt(icon.length);
+                        region.write(icon);
+                        offset += icon.length;
+                    }
+                    region.seek(0);
+                    region.write(header.array());
+                } finally {
+                    region.close();
+                }
+                return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+            } finally {
+                file.delete();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Could not share " + ids.length + " icons", e);
+            return null;
+        }
+    }
+}
@@ -11,6 +11,8 @@ import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.view.MenuItem;
 
+import com.theNemos.shadowPack.bitmap.IconLoader;
+
 
 public class Tab implements TabBase<Tab>{
 
@@ -22,6 +24,7 @@ public class Tab implements TabBase<Tab>{
     private boolean isClickable = true;
     private Object mTag;
     private Drawable mThumbnail;
+    private int mThumbnailRes;
     private int mLayout;
     
     protected Tab() {
@@ -70,12 +73,13 @@ public class Tab implements TabBase<Tab>{
         } else {
             equal = equal && other.getContent() == null;
         }
-        if (getThumbnail() != null) {
+        equal = equal && getThumbnailRes() == other.getThumbnailRes();
+        if (getThumbnail() instanceof BitmapDrawable && other.getThumbnail() instanceof BitmapDrawable) {
             Bitmap one = ((BitmapDrawable) getThumbnail()).getBitmap();
             Bitmap two = ((BitmapDrawable) other.getThumbnail()).getBitmap();
-            equal = equal && one.sameAs(two);
+            equal = equal && (one == two || one.sameAs(two));
         } else {
-            equal = equal && other.getThumbnail() == null;
+            equal = equal && getThumbnail() == other.getThumbnail();
         }
         return equal;
     }
@@ -156,9 +160,15 @@ public class Tab implements TabBase<Tab>{
      */
     public Tab setThumbnail(Drawable drawable) {
         mThumbnail = drawable;
+        mThumbnailRes = 0;
         return this;
     }
 
+    @Override
+    public int getThumbnailRes() {
+        return mThumbnailRes;
+    }
+
     @Override
     public int getLayout() {
         return mLayout;
@@ -175,13 +185,16 @@ public class Tab implements TabBase<Tab>{
     }
 
     /**
-     * Sets an optional thumbnail image resource that's displayed on the left side of the Tab.
+     * Sets an optional thumbnail image resource that's displayed on the left side of the Tab. The adapter loads it
+     * at thumbnail size through the shared {@link IconLoader}, in the background, so a thumbnail that is also an
+     * icon elsewhere in the app is decoded once and never on the main thread.
      *
-     * @param context The context used to resolve the drawable resource ID.
+     * @param context Unused, kept for existing callers.
      * @param resId   The resource ID of the drawable to use as a thumbnail.
      */
     public Tab setThumbnail(Context context, int resId) {
-        setThumbnail(context.getResources().getDrawable(resId));
+        mThumbnail = null;
+        mThumbnailRes = resId;
         return this;
     }
 
@@ -11,6 +11,7 @@ import android.widget.PopupMenu;
 import android.widget.TextView;
 import com.theNemos.shadowPack.*;
 import com.theNemos.shadowPack.silk.*;
+import com.theNemos.shadowPack.bitmap.IconLoader;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -283,6 +284,14 @@ public class TabAdapter<ItemType extends TabBase<ItemType>> extends SilkAdapter<
 
     protected boolean onProcessThumbnail(ImageView icon, ItemType Tab) {
         if (icon == null) return false;
+        IconLoader loader = IconLoader.getInstance(icon.getContext());
+        if (Tab.getThumbnailRes() != 0) {
+            loader.load(icon, Tab.getThumbnailRes(),
+                    icon.getResources().getDimensionPixelSize(R.dimen.card_thumbnail), null);
+            return true;
+        }
+        // The view may have been showing another tab's thumbnail, which must not land in it later
+        loader.recycle(icon);
         if (Tab.getThumbnail() == null) return false;
         icon.setImageDrawable(Tab.getThumbnail());
         return true;
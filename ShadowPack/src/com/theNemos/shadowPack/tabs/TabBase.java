@@ -26,6 +26,11 @@ public interface TabBase<ItemType> extends SilkComparable<ItemType> {
 
     public abstract Drawable getThumbnail();
 
+    /**
+     * Gets the drawable resource the thumbnail is loaded from in the background, or 0 if there is none.
+     */
+    public abstract int getThumbnailRes();
+
     public abstract int getLayout();
 
     public abstract Object getTag();
@@ -11,6 +11,7 @@ import android.widget.PopupMenu;
 import android.widget.TextView;
 import com.theNemos.shadowPack.*;
 import com.theNemos.shadowPack.silk.*;
+import com.theNemos.shadowPack.bitmap.IconLoader;
 //import com.afollestad.silk.adapters.SilkCursorAdapter;
 //import com.afollestad.silk.caching.SilkCursorItem;
 
@@ -285,6 +286,14 @@ public class TabCursorAdapter<ItemType extends TabBase<ItemType> & SilkCursorIte
 
     protected boolean onProcessThumbnail(ImageView icon, ItemType tab) {
         if (icon == null) return false;
+        IconLoader loader = IconLoader.getInstance(icon.getContext());
+        if (tab.getThumbnailRes() != 0) {
+            loader.load(icon, tab.getThumbnailRes(),
+                    icon.getResources().getDimensionPixelSize(R.dimen.card_thumbnail), null);
+            return true;
+        }
+        // The view may have been showing another tab's thumbnail, which must not land in it later
+        loader.recycle(icon);
         if (tab.getThumbnail() == null) return false;
         icon.setImageDrawable(tab.getThumbnail());
         return true;
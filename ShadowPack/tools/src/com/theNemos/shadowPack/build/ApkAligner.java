@@ -0,0 +1,195 @@
+package com.theNemos.shadowPack.build;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Rewrites a built APK so that every entry the app serves by file descriptor is stored uncompressed and starts on
+ * a page boundary: the pack's images under res/drawable* and res/raw*, and the mapped binary tables and atlases
+ * under assets/. Resources#openRawResourceFd and AssetManager#openFd only work on stored entries, and page
+ * alignment lets the tables be mapped straight out of the APK. Every other stored entry is 4-byte aligned, as
+ * zipalign would.
+ * <p/>
+ * Entries are copied byte for byte, and servable entries the packager deflated are inflated, which leaves their
+ * contents and so the JAR signature intact; this runs after signing and zipalign. The alignment padding goes in
+ * the local header's extra field. ZIP64 archives are not supported.
+ * <p/>
+ * Usage: ApkAligner &lt;apk&gt;, the file is replaced in place.
+ */
+public class ApkAligner {
+
+    static final int PAGE_ALIGNMENT = 4096;
+    static final int DEFAULT_ALIGNMENT = 4;
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_SIZE = 22;
+    private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: ApkAligner <apk>");
+            System.exit(1);
+        }
+        File apk = new File(args[0]);
+        byte[] aligned = align(readFile(apk));
+        File tmp = new File(apk.getPath() + ".aligned");
+        OutputStream os = new FileOutputStream(tmp);
+        try {
+            os.write(aligned);
+        } finally {
+            os.close();
+        }
+        // Replaced in one step, so a failed build never leaves the APK missing
+        Files.move(tmp.toPath(), apk.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        System.out.println("Aligned " + apk);
+    }
+
+    /**
+     * Gets whether the app opens an entry by file descriptor or maps it, so it has to be stored and page aligned.
+     */
+    static boolean isServable(String name) {
+        if (name.startsWith("res/raw")) return true;
+        if (name.startsWith("res/drawable")) {
+            String lower = name.toLowerCase();
+            return lower.endsWith(".png") && !lower.endsWith(".9.png") || lower.endsWith(".jpg") ||
+                    lower.endsWith(".jpeg") || lower.endsWith(".webp");
+        }
+        return name.startsWith("assets/") && (name.endsWith(".bin") || name.startsWith("assets/atlas/"));
+    }
+
+    static byte[] align(byte[] apk) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(apk).order(ByteOrder.LITTLE_ENDIAN);
+        int end = findEndOfCentralDirectory(in);
+        int count = in.getShort(end + 10) & 0xffff;
+        int centralOffset = in.getInt(end + 16);
+
+        ByteArrayOutputStream data = new ByteArrayOutputStream(apk.length + count * 64);
+        ByteArrayOutputStream central = new ByteArrayOutputStream(in.getInt(end + 12));
+        int at = centralOffset;
+        for (int i = 0; i < count; i++) {
+            if (in.getInt(at) != CENTRAL_HEADER) throw new IOException("Corrupt central directory at " + at);
+            int flags = in.getShort(at + 8) & 0xffff;
+            int method = in.getShort(at + 10) & 0xffff;
+            int compressedSize = in.getInt(at + 20);
+            int size = in.getInt(at + 24);
+            int nameLength = in.getShort(at + 28) & 0xffff;
+            int extraLength = in.getShort(at + 30) & 0xffff;
+            int commentLength = in.getShort(at + 32) & 0xffff;
+            int localOffset = in.getInt(at + 42);
+            String name = new String(apk, at + CENTRAL_HEADER_SIZE, nameLength, "UTF-8");
+            int centralSize = CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+
+            if (in.getInt(localOffset) != LOCAL_HEADER) throw new IOException("Corrupt local header of " + name);
+            int localExtraLength = in.getShort(localOffset + 28) & 0xffff;
+            int dataOffset = localOffset + LOCAL_HEADER_SIZE + nameLength + localExtraLength;
+            byte[] content;
+            boolean servable = isServable(name) && !name.endsWith("/");
+            if (servable && method == DEFLATED) {
+                content = inflate(apk, dataOffset, compressedSize, size);
+                method = STORED;
+                compressedSize = size;
+            } else {
+                content = new byte[compressedSize];
+                System.arraycopy(apk, dataOffset, content, 0, compressedSize);
+            }
+
+            // The sizes now always go in the local header, so no entry needs a data descriptor
+            flags &= ~FLAG_DATA_DESCRIPTOR;
+            int newOffset = data.size();
+            int alignment = method != STORED ? 1 : (servable ? PAGE_ALIGNMENT : DEFAULT_ALIGNMENT);
+            int padding = (alignment - (newOffset + LOCAL_HEADER_SIZE + nameLength) % alignment) % alignment;
+
+            ByteBuffer local = ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            local.putInt(LOCAL_HEADER)
+                    .putShort(in.getShort(at + 6))
+                    .putShort((short) flags)
+                    .putShort((short) method)
+                    .putInt(in.getInt(at + 12))
+                    .putInt(in.getInt(at + 16))
+                    .putInt(compressedSize)
+                    .putInt(size)
+                    .putShort((short) nameLength)
+                    .putShort((short) padding);
+            data.write(local.array());
+            data.write(apk, at + CENTRAL_HEADER_SIZE, nameLength);
+            data.write(new byte[padding]);
+            data.write(content);
+
+            ByteBuffer header = ByteBuffer.allocate(centralSize).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(apk, at, centralSize);
+            header.putShort(8, (short) flags);
+            header.putShort(10, (short) method);
+            header.putInt(20, compressedSize);
+            header.putInt(42, newOffset);
+            central.write(header.array());
+            at += centralSize;
+        }
+
+        int newCentralOffset = data.size();
+        central.writeTo(data);
+        ByteBuffer tail = ByteBuffer.allocate(apk.length - end).order(ByteOrder.LITTLE_ENDIAN);
+        tail.put(apk, end, apk.length - end);
+        tail.putInt(12, central.size());
+        tail.putInt(16, newCentralOffset);
+        data.write(tail.array());
+        return data.toByteArray();
+    }
+
+    private static int findEndOfCentralDirectory(ByteBuffer in) throws IOException {
+        // The record is last, followed only by a comment of up to 64k
+        for (int at = in.capacity() - END_SIZE; at >= Math.max(0, in.capacity() - END_SIZE - 0xffff); at--) {
+            if (in.getInt(at) == END_OF_CENTRAL_DIRECTORY) return at;
+        }
+        throw new IOException("Not a zip archive");
+    }
+
+    private static byte[] inflate(byte[] apk, int offset, int length, int size) throws IOException {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(apk, offset, length);
+            byte[] content = new byte[size];
+            int read = 0;
+            while (read < size && !inflater.finished()) {
+                int n = inflater.inflate(content, read, size - read);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                read += n;
+            }
+            if (read != size) throw new IOException("Truncated entry at " + offset);
+            return content;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt entry at " + offset + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buffer)) > 0) out.write(buffer, 0, n);
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.theNemos.shadowPack.build;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Compiles res/xml/appfilter.xml into assets/appfilter.bin, a hashed component-to-drawable table with a Bloom
+ * filter in front of it so the app can turn away components the pack does not theme without touching the table.
+ * <p/>
+ * Components are keyed as "package/fully.qualified.Class". All values are big-endian. The layout is:
+ * <pre>
+ * header    magic 'SPAF', version, entry count, log2 of the bloom filter bits, bloom hash count,
+ *           package count, entries offset, bloom offset, packages offset, strings offset  (10 ints)
+ * entries   sorted by component hash, ENTRY_SIZE bytes each:
+ *           component hash (int), drawable resource id (int), component offset (int), component length (short),
+ *           reserved (short)
+ * bloom     the filter bits, bit i being (byte i / 8) &amp; (1 &lt;&lt; (i % 8))
+ * packages  package count ints, the sorted String.hashCode of every themed package
+ * strings   the UTF-8 bytes of every component key
+ * </pre>
+ * Bloom bit n of k for a component is (hash + n * fnv1a) masked to the filter size, hash being
+ * String.hashCode and fnv1a the 32 bit FNV-1a hash of the key's chars.
+ * <p/>
+ * Usage: AppFilterCompiler &lt;res dir&gt; &lt;R.java&gt; &lt;assets dir&gt;
+ */
+public class AppFilterCompiler {
+
+    static final int MAGIC = 0x53504146;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 40;
+    static final int ENTRY_SIZE = 16;
+    static final int BLOOM_HASHES = 4;
+    static final int BLOOM_BITS_PER_ENTRY = 10;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: AppFilterCompiler <res dir> <R.java> <assets dir>");
+            System.exit(1);
+        }
+        File appfilter = new File(args[0], "xml" + File.separator + "appfilter.xml");
+        Map<String, Integer> ids = IconIndexGenerator.readDrawableIds(new File(args[1]));
+        File out = new File(args[2], "appfilter.bin");
+        compile(appfilter, ids, out);
+        System.out.println("Wrote " + out);
+    }
+
+    static void compile(File appfilter, Map<String, Integer> ids, File out) throws IOException {
+        List<Entry> entries = readEntries(appfilter, ids);
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                if (a.hash != b.hash) return a.hash < b.hash ? -1 : 1;
+                return a.key.compareTo(b.key);
+            }
+        });
+
+        int bloomLog2 = 6;
+        while ((1 << bloomLog2) < entries.size() * BLOOM_BITS_PER_ENTRY) bloomLog2++;
+        byte[] bloom = new byte[(1 << bloomLog2) / 8];
+        int mask = (1 << bloomLog2) - 1;
+
+        TreeSet<Integer> packages = new TreeSet<Integer>();
+        int stringsLength = 0;
+        for (Entry e : entries) {
+            int fnv = fnv1a(e.key);
+            for (int n = 0; n < BLOOM_HASHES; n++) {
+                int bit = (e.hash + n * fnv) & mask;
+                bloom[bit >>> 3] |= 1 << (bit & 7);
+            }
+            packages.add(e.key.substring(0, e.key.indexOf('/')).hashCode());
+            e.offset = stringsLength;
+            stringsLength += e.utf8.length;
+        }
+
+        int entriesOffset = HEADER_SIZE;
+        int bloomOffset = entriesOffset + entries.size() * ENTRY_SIZE;
+        int packagesOffset = bloomOffset + bloom.length;
+        int stringsOffset = packagesOffset + packages.size() * 4;
+
+        out.getParentFile().mkdirs();
+        DataOutputStream os = new DataOutputStream(new FileOutputStream(out));
+        try {
+            os.writeInt(MAGIC);
+            os.writeInt(VERSION);
+            os.writeInt(entries.size());
+            os.writeInt(bloomLog2);
+            os.writeInt(BLOOM_HASHES);
+            os.writeInt(packages.size());
+            os.writeInt(entriesOffset);
+            os.writeInt(bloomOffset);
+            os.writeInt(packagesOffset);
+            os.writeInt(stringsOffset);
+            for (Entry e : entries) {
+                os.writeInt(e.hash);
+                os.writeInt(e.resId);
+                os.writeInt(e.offset);
+                os.writeShort(e.utf8.length);
+                os.writeShort(0);
+            }
+            os.write(bloom);
+            for (int hash : packages) {
+                os.writeInt(hash);
+            }
+            for (Entry e : entries) {
+                os.write(e.utf8);
+            }
+        } finally {
+            os.close();
+        }
+    }
+
+    private static List<Entry> readEntries(File appfilter, Map<String, Integer> ids) throws IOException {
+        Document doc = IconPackSource.parse(appfilter);
+        NodeList items = doc.getElementsByTagName("item");
+        List<Entry> entries = new ArrayList<Entry>(items.getLength());
+        TreeSet<String> seen = new TreeSet<String>();
+        for (int i = 0; i < items.getLength(); i++) {
+            Element item = (Element) items.item(i);
+            String key = componentKey(item.getAttribute("component"));
+            String drawable = item.getAttribute("drawable");
+            if (key == null) {
+                System.err.println("warning: appfilter.xml has a malformed component '" +
+                        item.getAttribute("component") + "', skipping");
+                continue;
+            }
+            Integer resId = ids.get(drawable);
+            if (resId == null) {
+                System.err.println("warning: appfilter.xml maps " + key + " to missing drawable '" + drawable + "'");
+                continue;
+            }
+            if (!seen.add(key)) {
+                System.err.println("warning: appfilter.xml maps " + key + " more than once, keeping the first");
+                continue;
+            }
+            entries.add(new Entry(key, resId));
+        }
+        return entries;
+    }
+
+    /**
+     * Turns "ComponentInfo{pkg/.Cls}" into "pkg/pkg.Cls", or returns null if it is not a component.
+     */
+    static String componentKey(String component) {
+        String c = component.trim();
+        if (c.startsWith("ComponentInfo{") && c.endsWith("}")) c = c.substring(14, c.length() - 1);
+        int slash = c.indexOf('/');
+        if (slash <= 0 || slash == c.length() - 1) return null;
+        String pkg = c.substring(0, slash);
+        String cls = c.substring(slash + 1);
+        if (cls.startsWith(".")) cls = pkg + cls;
+        return pkg + "/" + cls;
+    }
+
+    static int fnv1a(String key) {
+        int hash = 0x811c9dc5;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+
+    private static class Entry {
+
+        final String key;
+        final byte[] utf8;
+        final int hash;
+        final int resId;
+        int offset;
+
+        Entry(String key, int resId) throws IOException {
+            this.key = key;
+            this.utf8 = key.getBytes("UTF-8");
+            this.hash = key.hashCode();
+            this.resId = resId;
+        }
+    }
+}
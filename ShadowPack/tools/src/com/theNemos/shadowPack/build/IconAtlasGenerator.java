@@ -0,0 +1,173 @@
+package com.theNemos.shadowPack.build;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Packs the icons of every category into a few atlas images, so an icon page can be shown by decoding one or two
+ * images instead of one per icon. Writes assets/atlas/&lt;category&gt;_&lt;n&gt;.png, category being the position in
+ * icon_categories.xml, and assets/icon_atlas.bin, the table of where every icon is.
+ * <p/>
+ * Icons are drawn centred in square cells of the largest icon size, with PADDING pixels between cells so filtering
+ * never bleeds one icon into the next, and atlases are at most MAX_ATLAS_SIZE pixels on each side.
+ * <p/>
+ * All values are big-endian. The layout is:
+ * <pre>
+ * header      magic 'SPAT', version, cell size, category count, categories offset, entries offset  (6 ints)
+ * categories  category count records: first entry (int), entry count (int), atlas count (int)
+ * entries     ENTRY_SIZE bytes each, sorted by resource id within each category:
+ *             resource id (int), atlas (short), x (short), y (short), width (short), height (short),
+ *             reserved (short)
+ * </pre>
+ * Usage: IconAtlasGenerator &lt;res dir&gt; &lt;R.java&gt; &lt;assets dir&gt;
+ */
+public class IconAtlasGenerator {
+
+    static final int MAGIC = 0x53504154;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 24;
+    static final int CATEGORY_SIZE = 12;
+    static final int ENTRY_SIZE = 16;
+    static final int PADDING = 2;
+    static final int MAX_ATLAS_SIZE = 2048;
+    static final int MAX_CELL_SIZE = 192;
+    static final String ATLAS_DIR = "atlas";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: IconAtlasGenerator <res dir> <R.java> <assets dir>");
+            System.exit(1);
+        }
+        IconPackSource source = new IconPackSource(new File(args[0]));
+        Map<String, Integer> ids = IconIndexGenerator.readDrawableIds(new File(args[1]));
+        File assets = new File(args[2]);
+        generate(source, ids, assets);
+        System.out.println("Wrote " + new File(assets, "icon_atlas.bin"));
+    }
+
+    static void generate(IconPackSource source, Map<String, Integer> ids, File assets) throws IOException {
+        File atlasDir = new File(assets, ATLAS_DIR);
+        atlasDir.mkdirs();
+        File[] stale = atlasDir.listFiles();
+        if (stale != null) {
+            for (File f : stale) f.delete();
+        }
+
+        List<IconPackSource.Category> categories = source.getCategories();
+        int cellSize = 0;
+        for (IconPackSource.Category c : categories) {
+            for (String name : c.getIcons()) {
+                int[] size = IconIndexGenerator.readSize(source.getLargestDrawableFile(name));
+                cellSize = Math.max(cellSize, Math.max(size[0], size[1]));
+            }
+        }
+        cellSize = Math.max(1, Math.min(cellSize, MAX_CELL_SIZE));
+        int pitch = cellSize + PADDING;
+        int perRow = Math.max(1, MAX_ATLAS_SIZE / pitch);
+        int perAtlas = perRow * perRow;
+
+        List<List<Entry>> tables = new ArrayList<List<Entry>>();
+        int[] atlasCounts = new int[categories.size()];
+        for (int c = 0; c < categories.size(); c++) {
+            List<Entry> entries = new ArrayList<Entry>();
+            for (String name : categories.get(c).getIcons()) {
+                Integer resId = ids.get(name);
+                File file = source.getLargestDrawableFile(name);
+                BufferedImage image = file != null ? ImageIO.read(file) : null;
+                if (resId == null || image == null) continue;
+                entries.add(new Entry(resId, image));
+            }
+
+            for (int first = 0; first < entries.size(); first += perAtlas) {
+                List<Entry> page = entries.subList(first, Math.min(entries.size(), first + perAtlas));
+                int columns = Math.min(perRow, page.size());
+                int rows = (page.size() + perRow - 1) / perRow;
+                BufferedImage atlas = new BufferedImage(columns * pitch, rows * pitch, BufferedImage.TYPE_INT_ARGB);
+                Graphics2D g = atlas.createGraphics();
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                for (int i = 0; i < page.size(); i++) {
+                    Entry e = page.get(i);
+                    int largest = Math.max(e.image.getWidth(), e.image.getHeight());
+                    e.width = Math.max(1, e.image.getWidth() * cellSize / Math.max(largest, cellSize));
+                    e.height = Math.max(1, e.image.getHeight() * cellSize / Math.max(largest, cellSize));
+                    e.atlas = atlasCounts[c];
+                    e.x = (i % perRow) * pitch + (cellSize - e.width) / 2;
+                    e.y = (i / perRow) * pitch + (cellSize - e.height) / 2;
+                    g.drawImage(e.image, e.x, e.y, e.width, e.height, null);
+                }
+                g.dispose();
+                ImageIO.write(atlas, "png", new File(atlasDir, c + "_" + atlasCounts[c] + ".png"));
+                atlasCounts[c]++;
+            }
+
+            Collections.sort(entries, new Comparator<Entry>() {
+                @Override
+                public int compare(Entry a, Entry b) {
+                    return a.resId < b.resId ? -1 : (a.resId == b.resId ? 0 : 1);
+                }
+            });
+            tables.add(entries);
+        }
+
+        int categoriesOffset = HEADER_SIZE;
+        int entriesOffset = categoriesOffset + categories.size() * CATEGORY_SIZE;
+        DataOutputStream os = new DataOutputStream(new FileOutputStream(new File(assets, "icon_atlas.bin")));
+        try {
+            os.writeInt(MAGIC);
+            os.writeInt(VERSION);
+            os.writeInt(cellSize);
+            os.writeInt(categories.size());
+            os.writeInt(categoriesOffset);
+            os.writeInt(entriesOffset);
+            int first = 0;
+            for (int c = 0; c < tables.size(); c++) {
+                os.writeInt(first);
+                os.writeInt(tables.get(c).size());
+                os.writeInt(atlasCounts[c]);
+                first += tables.get(c).size();
+            }
+            for (List<Entry> entries : tables) {
+                for (Entry e : entries) {
+                    os.writeInt(e.resId);
+                    os.writeShort(e.atlas);
+                    os.writeShort(e.x);
+                    os.writeShort(e.y);
+                    os.writeShort(e.width);
+                    os.writeShort(e.height);
+                    os.writeShort(0);
+                }
+            }
+        } finally {
+            os.close();
+        }
+    }
+
+    private static class Entry {
+
+        final int resId;
+        final BufferedImage image;
+        int atlas;
+        int x;
+        int y;
+        int width;
+        int height;
+
+        Entry(int resId, BufferedImage image) {
+            this.resId = resId;
+            this.image = image;
+        }
+    }
+}
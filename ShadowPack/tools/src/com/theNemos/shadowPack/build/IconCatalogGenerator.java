@@ -0,0 +1,87 @@
+package com.theNemos.shadowPack.build;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Generates com.theNemos.shadowPack.catalog.IconTables, the compiled resource id tables for every icon
+ * category, so the app never has to resolve icon names through Resources.getIdentifier on the device.
+ * <p/>
+ * Usage: IconCatalogGenerator &lt;res dir&gt; &lt;gen dir&gt;
+ */
+public class IconCatalogGenerator {
+
+    static final String PACKAGE = "com.theNemos.shadowPack.catalog";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: IconCatalogGenerator <res dir> <gen dir>");
+            System.exit(1);
+        }
+        IconPackSource source = new IconPackSource(new File(args[0]));
+        File out = new File(args[1], PACKAGE.replace('.', File.separatorChar) + File.separator + "IconTables.java");
+        generate(source, out);
+        System.out.println("Wrote " + out);
+    }
+
+    static void generate(IconPackSource source, File out) throws IOException {
+        out.getParentFile().mkdirs();
+        PrintWriter w = new PrintWriter(new OutputStreamWriter(new FileOutputStream(out), "UTF-8"));
+        try {
+            w.println("/* AUTO-GENERATED FILE.  DO NOT MODIFY.");
+            w.println(" *");
+            w.println(" * This class was automatically generated by IconCatalogGenerator");
+            w.println(" * from res/values/icon_categories.xml, the icon string-arrays and");
+            w.println(" * the drawable folders. It should not be modified by hand.");
+            w.println(" */");
+            w.println();
+            w.println("package " + PACKAGE + ";");
+            w.println();
+            w.println("import com.theNemos.shadowPack.R;");
+            w.println();
+            w.println("public final class IconTables {");
+            w.println();
+            w.print("    public static final String[] CATEGORY_KEYS = {");
+            for (IconPackSource.Category c : source.getCategories()) {
+                w.print(" \"" + c.getKey() + "\",");
+            }
+            w.println(" };");
+            for (IconPackSource.Category c : source.getCategories()) {
+                w.println();
+                writeTable(w, constantName(c.getKey()), c.getIcons());
+            }
+            w.println();
+            w.println("    /** Every icon in the icon_pack array, as offered to launcher icon pickers. */");
+            writeTable(w, "PACK", source.getPackIcons());
+            w.println();
+            w.print("    public static final int[][] CATEGORIES = {");
+            for (IconPackSource.Category c : source.getCategories()) {
+                w.print(" " + constantName(c.getKey()) + ",");
+            }
+            w.println(" };");
+            w.println();
+            w.println("    private IconTables() {");
+            w.println("    }");
+            w.println("}");
+        } finally {
+            w.close();
+        }
+    }
+
+    private static void writeTable(PrintWriter w, String constant, List<String> icons) {
+        w.println("    public static final int[] " + constant + " = {");
+        for (String icon : icons) {
+            w.println("        R.drawable." + icon + ",");
+        }
+        w.println("    };");
+    }
+
+    static String constantName(String key) {
+        return key.toUpperCase(Locale.US).replaceAll("[^A-Z0-9]", "_");
+    }
+}
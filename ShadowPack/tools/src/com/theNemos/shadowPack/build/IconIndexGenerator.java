@@ -0,0 +1,294 @@
+package com.theNemos.shadowPack.build;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import java.awt.image.BufferedImage;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Writes assets/icon_index.bin, the binary icon index the app memory-maps instead of building Java objects for
+ * every icon. It runs after aapt so the resource ids can be taken from the generated R.java.
+ * <p/>
+ * All values are big-endian. The layout is:
+ * <pre>
+ * header   magic 'SPIX', version, entry count, category count,
+ *          entries offset, name order offset, strings offset, strings length, id order offset  (9 ints)
+ * entries  sorted by name hash, ENTRY_SIZE bytes each:
+ *          name hash (int), resource id (int), category bit mask (int),
+ *          width (short), height (short), name offset (int), name length (short), flags (short),
+ *          content hash (int)
+ * names    entry count ints, the entry positions sorted by name
+ * ids      entry count ints, the entry positions sorted by resource id
+ * strings  the UTF-8 bytes of every name
+ * </pre>
+ * Flags bit 0 ({@link #FLAG_OPAQUE}) is set for icons with no transparent pixel in any density, which the app
+ * decodes without an alpha channel.
+ * <p/>
+ * The content hash is the CRC32 of every density of the drawable, so caches of derived images can tell whether an
+ * icon changed between two builds even if its resource id did not, or the other way round. It is never 0, which
+ * the caches read as unknown.
+ * <p/>
+ * Usage: IconIndexGenerator &lt;res dir&gt; &lt;R.java&gt; &lt;assets dir&gt;
+ */
+public class IconIndexGenerator {
+
+    static final int MAGIC = 0x53504958;
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 36;
+    static final int ENTRY_SIZE = 28;
+    static final int FLAG_OPAQUE = 1;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: IconIndexGenerator <res dir> <R.java> <assets dir>");
+            System.exit(1);
+        }
+        IconPackSource source = new IconPackSource(new File(args[0]));
+        Map<String, Integer> ids = readDrawableIds(new File(args[1]));
+        File out = new File(args[2], "icon_index.bin");
+        generate(source, ids, out);
+        System.out.println("Wrote " + out);
+    }
+
+    static void generate(IconPackSource source, Map<String, Integer> ids, File out) throws IOException {
+        List<Entry> entries = collectEntries(source, ids);
+
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                if (a.hash != b.hash) return a.hash < b.hash ? -1 : 1;
+                return a.name.compareTo(b.name);
+            }
+        });
+        List<Entry> byName = new ArrayList<Entry>(entries);
+        Collections.sort(byName, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return a.name.compareTo(b.name);
+            }
+        });
+        List<Entry> byId = new ArrayList<Entry>(entries);
+        Collections.sort(byId, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return a.resId < b.resId ? -1 : (a.resId == b.resId ? 0 : 1);
+            }
+        });
+
+        int stringsLength = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            Entry e = entries.get(i);
+            e.position = i;
+            e.nameOffset = stringsLength;
+            stringsLength += e.utf8.length;
+        }
+
+        int entriesOffset = HEADER_SIZE;
+        int namesOffset = entriesOffset + entries.size() * ENTRY_SIZE;
+        int idsOffset = namesOffset + entries.size() * 4;
+        int stringsOffset = idsOffset + entries.size() * 4;
+
+        out.getParentFile().mkdirs();
+        DataOutputStream os = new DataOutputStream(new FileOutputStream(out));
+        try {
+            os.writeInt(MAGIC);
+            os.writeInt(VERSION);
+            os.writeInt(entries.size());
+            os.writeInt(source.getCategories().size());
+            os.writeInt(entriesOffset);
+            os.writeInt(namesOffset);
+            os.writeInt(stringsOffset);
+            os.writeInt(stringsLength);
+            os.writeInt(idsOffset);
+            for (Entry e : entries) {
+                os.writeInt(e.hash);
+                os.writeInt(e.resId);
+                os.writeInt(e.categories);
+                os.writeShort(e.width);
+                os.writeShort(e.height);
+                os.writeInt(e.nameOffset);
+                os.writeShort(e.utf8.length);
+                os.writeShort(e.flags);
+                os.writeInt(e.contentHash);
+            }
+            for (Entry e : byName) {
+                os.writeInt(e.position);
+            }
+            for (Entry e : byId) {
+                os.writeInt(e.position);
+            }
+            for (Entry e : entries) {
+                os.write(e.utf8);
+            }
+        } finally {
+            os.close();
+        }
+    }
+
+    private static List<Entry> collectEntries(IconPackSource source, Map<String, Integer> ids) throws IOException {
+        Set<String> names = new LinkedHashSet<String>();
+        List<IconPackSource.Category> categories = source.getCategories();
+        if (categories.size() > 32) throw new IOException("The icon index supports at most 32 categories");
+        for (IconPackSource.Category c : categories) names.addAll(c.getIcons());
+        names.addAll(source.getPackIcons());
+
+        List<Entry> entries = new ArrayList<Entry>(names.size());
+        for (Iterator<String> it = names.iterator(); it.hasNext(); ) {
+            String name = it.next();
+            Integer resId = ids.get(name);
+            if (resId == null) {
+                System.err.println("warning: drawable '" + name + "' is missing from R.java, leaving it out of the index");
+                continue;
+            }
+            Entry e = new Entry(name, resId);
+            for (int i = 0; i < categories.size(); i++) {
+                if (categories.get(i).getIcons().contains(name)) e.categories |= 1 << i;
+            }
+            int[] size = readSize(source.getLargestDrawableFile(name));
+            e.width = size[0];
+            e.height = size[1];
+            e.contentHash = contentHash(source.getDrawableFiles(name));
+            if (isOpaque(source.getDrawableFiles(name))) e.flags |= FLAG_OPAQUE;
+            entries.add(e);
+        }
+        return entries;
+    }
+
+    /**
+     * Reads the drawable ids out of an aapt generated R.java.
+     */
+    static Map<String, Integer> readDrawableIds(File rJava) throws IOException {
+        Map<String, Integer> ids = new HashMap<String, Integer>();
+        Pattern field = Pattern.compile("public static final int (\\w+)=0x([0-9a-fA-F]+);");
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(rJava), "UTF-8"));
+        try {
+            boolean inDrawable = false;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.contains("class drawable")) {
+                    inDrawable = true;
+                } else if (inDrawable && line.contains("public static final class")) {
+                    break;
+                } else if (inDrawable) {
+                    Matcher m = field.matcher(line);
+                    if (m.find()) ids.put(m.group(1), (int) Long.parseLong(m.group(2), 16));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return ids;
+    }
+
+    /**
+     * Hashes the bytes of every density of a drawable, in folder order so the hash does not depend on the file system.
+     */
+    static int contentHash(List<File> files) throws IOException {
+        List<File> sorted = new ArrayList<File>(files);
+        Collections.sort(sorted, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return a.getParentFile().getName().compareTo(b.getParentFile().getName());
+            }
+        });
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[8192];
+        for (File f : sorted) {
+            crc.update(f.getParentFile().getName().getBytes("UTF-8"));
+            FileInputStream in = new FileInputStream(f);
+            try {
+                int n;
+                while ((n = in.read(buffer)) != -1) crc.update(buffer, 0, n);
+            } finally {
+                in.close();
+            }
+        }
+        // 0 means unknown to the caches, so it would never match
+        int hash = (int) crc.getValue();
+        return hash != 0 ? hash : 1;
+    }
+
+    /**
+     * Gets whether every density of a drawable is a bitmap without a single pixel that is not fully opaque. An
+     * image can have an alpha channel and still not use it, so the pixels are checked rather than the format.
+     */
+    static boolean isOpaque(List<File> files) throws IOException {
+        if (files.isEmpty()) return false;
+        for (File f : files) {
+            BufferedImage image = ImageIO.read(f);
+            if (image == null) return false;
+            if (!image.getColorModel().hasAlpha()) continue;
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    if ((image.getRGB(x, y) >>> 24) != 0xff) return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the pixel size of an image without decoding it, or 0x0 for drawables that are not bitmaps.
+     */
+    static int[] readSize(File file) throws IOException {
+        if (file == null) return new int[]{0, 0};
+        ImageInputStream in = ImageIO.createImageInputStream(file);
+        if (in == null) return new int[]{0, 0};
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) return new int[]{0, 0};
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in);
+                return new int[]{Math.min(reader.getWidth(0), 0xffff), Math.min(reader.getHeight(0), 0xffff)};
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static class Entry {
+
+        final String name;
+        final byte[] utf8;
+        final int hash;
+        final int resId;
+        int categories;
+        int width;
+        int height;
+        int contentHash;
+        int flags;
+        int position;
+        int nameOffset;
+
+        Entry(String name, int resId) throws IOException {
+            this.name = name;
+            this.utf8 = name.getBytes("UTF-8");
+            this.hash = name.hashCode();
+            this.resId = resId;
+        }
+    }
+}
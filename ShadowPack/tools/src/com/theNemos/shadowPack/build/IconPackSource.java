@@ -0,0 +1,227 @@
+package com.theNemos.shadowPack.build;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Build-time view of the icon pack: every drawable in the res folders and every string-array in res/values,
+ * plus the categories declared in icon_categories.xml resolved to drawable names.
+ */
+public class IconPackSource {
+
+    /**
+     * Drawables that belong to the launcher theme itself and never show up as pickable icons.
+     */
+    private static final Set<String> THEME_DRAWABLES = new LinkedHashSet<String>();
+
+    static {
+        Collections.addAll(THEME_DRAWABLES, "iconback", "iconmask", "iconmask_go", "iconupon");
+    }
+
+    private final File mResDir;
+    private final Map<String, List<File>> mDrawables = new TreeMap<String, List<File>>();
+    private final Map<String, List<String>> mArrays = new LinkedHashMap<String, List<String>>();
+    private final List<Category> mCategories = new ArrayList<Category>();
+
+    public IconPackSource(File resDir) throws IOException {
+        mResDir = resDir;
+        scanDrawables();
+        scanArrays();
+        resolveCategories();
+    }
+
+    public File getResDir() {
+        return mResDir;
+    }
+
+    /**
+     * Gets every drawable name found in the res folders, sorted.
+     */
+    public Set<String> getDrawableNames() {
+        return mDrawables.keySet();
+    }
+
+    /**
+     * Gets the files backing a drawable, one per density folder it was found in.
+     */
+    public List<File> getDrawableFiles(String name) {
+        List<File> files = mDrawables.get(name);
+        if (files == null) return Collections.emptyList();
+        return files;
+    }
+
+    /**
+     * Gets the file the app will decode on the highest density it ships, or null if the drawable does not exist.
+     */
+    public File getLargestDrawableFile(String name) {
+        File best = null;
+        int bestRank = -1;
+        for (File f : getDrawableFiles(name)) {
+            int rank = densityRank(f.getParentFile().getName());
+            if (rank > bestRank) {
+                best = f;
+                bestRank = rank;
+            }
+        }
+        return best;
+    }
+
+    public boolean hasDrawable(String name) {
+        return mDrawables.containsKey(name);
+    }
+
+    /**
+     * Gets the items of a string-array from res/values, or an empty list if there is no such array.
+     */
+    public List<String> getArray(String name) {
+        List<String> items = mArrays.get(name);
+        if (items == null) return Collections.emptyList();
+        return items;
+    }
+
+    public List<Category> getCategories() {
+        return mCategories;
+    }
+
+    /**
+     * Gets the drawable names listed in the icon_pack array that actually exist, in order.
+     */
+    public List<String> getPackIcons() {
+        return existing(getArray("icon_pack"), "icon_pack");
+    }
+
+    private void scanDrawables() throws IOException {
+        File[] dirs = mResDir.listFiles();
+        if (dirs == null) throw new IOException("Not a resource folder: " + mResDir);
+        for (File dir : dirs) {
+            if (!dir.isDirectory() || !dir.getName().startsWith("drawable")) continue;
+            File[] files = dir.listFiles();
+            if (files == null) continue;
+            for (File f : files) {
+                String name = drawableName(f.getName());
+                if (name == null) continue;
+                List<File> list = mDrawables.get(name);
+                if (list == null) {
+                    list = new ArrayList<File>();
+                    mDrawables.put(name, list);
+                }
+                list.add(f);
+            }
+        }
+    }
+
+    private void scanArrays() throws IOException {
+        File[] files = new File(mResDir, "values").listFiles();
+        if (files == null) return;
+        for (File f : files) {
+            if (!f.getName().endsWith(".xml")) continue;
+            Document doc = parse(f);
+            NodeList arrays = doc.getElementsByTagName("string-array");
+            for (int i = 0; i < arrays.getLength(); i++) {
+                Element array = (Element) arrays.item(i);
+                NodeList items = array.getElementsByTagName("item");
+                List<String> values = new ArrayList<String>(items.getLength());
+                for (int j = 0; j < items.getLength(); j++) {
+                    values.add(items.item(j).getTextContent().trim());
+                }
+                mArrays.put(array.getAttribute("name"), values);
+            }
+        }
+    }
+
+    private void resolveCategories() throws IOException {
+        List<String> keys = getArray("icon_category_keys");
+        List<String> arrays = getArray("icon_category_arrays");
+        List<String> prefixes = getArray("icon_category_prefixes");
+        List<String> titles = getArray("icon_category_titles");
+        if (keys.size() != arrays.size() || keys.size() != prefixes.size() || keys.size() != titles.size()) {
+            throw new IOException("icon_categories.xml: icon_category_keys, icon_category_titles, " +
+                    "icon_category_arrays and icon_category_prefixes must have the same number of items");
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            String array = arrays.get(i);
+            String prefix = prefixes.get(i);
+            Set<String> icons = new LinkedHashSet<String>(existing(getArray(array), array));
+            if (prefix.length() > 0) {
+                for (String name : mDrawables.keySet()) {
+                    if (name.startsWith(prefix) && !THEME_DRAWABLES.contains(name)) icons.add(name);
+                }
+            }
+            mCategories.add(new Category(keys.get(i), new ArrayList<String>(icons)));
+        }
+    }
+
+    private List<String> existing(List<String> names, String array) {
+        List<String> result = new ArrayList<String>(names.size());
+        for (String name : names) {
+            if (hasDrawable(name)) {
+                result.add(name);
+            } else {
+                System.err.println("warning: " + array + " lists missing drawable '" + name + "', skipping");
+            }
+        }
+        return result;
+    }
+
+    static Document parse(File f) throws IOException {
+        try {
+            return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(f);
+        } catch (Exception e) {
+            throw new IOException("Failed to parse " + f + ": " + e.getMessage());
+        }
+    }
+
+    private static String drawableName(String fileName) {
+        if (fileName.startsWith(".")) return null;
+        if (fileName.endsWith(".9.png")) return fileName.substring(0, fileName.length() - 6);
+        int dot = fileName.lastIndexOf('.');
+        if (dot <= 0) return null;
+        return fileName.substring(0, dot);
+    }
+
+    private static int densityRank(String folder) {
+        if (folder.contains("xxxhdpi")) return 6;
+        if (folder.contains("xxhdpi")) return 5;
+        if (folder.contains("xhdpi")) return 4;
+        if (folder.contains("hdpi")) return 3;
+        if (folder.contains("mdpi")) return 2;
+        if (folder.contains("ldpi")) return 1;
+        return 0;
+    }
+
+    public static class Category {
+
+        private final String mKey;
+        private final List<String> mIcons;
+
+        Category(String key, List<String> icons) {
+            mKey = key;
+            mIcons = icons;
+        }
+
+        public String getKey() {
+            return mKey;
+        }
+
+        /**
+         * Gets the drawable names in this category, in display order.
+         */
+        public List<String> getIcons() {
+            return mIcons;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.theNemos.shadowPack.build;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Aligns a small APK-like archive, opens the result with the JDK's own zip readers and checks the entry offsets
+ * the way the device's openRawResourceFd and MappedAsset rely on them.
+ */
+public class ApkAlignerTest {
+
+    private static final String[] SERVABLE = {"res/drawable-xxhdpi/browser.png", "res/drawable/mail.webp",
+            "res/raw/sound.ogg", "assets/icon_index.bin", "assets/atlas/atlas_0.png"};
+    private static final String[] OTHER = {"AndroidManifest.xml", "classes.dex", "res/drawable/button.9.png",
+            "res/layout/main.xml", "assets/fonts/title.ttf"};
+
+    private File mDir;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = Files.createTempDirectory("aligner").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) file.delete();
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void servableEntriesAreStoredAndPageAligned() throws IOException {
+        byte[] aligned = ApkAligner.align(write(new File(mDir, "app.apk"), entries(), false));
+        Map<String, int[]> layout = layout(aligned);
+        for (String name : SERVABLE) {
+            int[] entry = layout.get(name);
+            assertEquals(name, 0, entry[0]);
+            assertEquals(name, 0, entry[1] % ApkAligner.PAGE_ALIGNMENT);
+        }
+        // Left compressed, or only word aligned like zipalign does
+        assertEquals(8, layout.get("classes.dex")[0]);
+        assertEquals(8, layout.get("res/drawable/button.9.png")[0]);
+        assertEquals(0, layout.get("assets/fonts/title.ttf")[0]);
+        assertEquals(0, layout.get("assets/fonts/title.ttf")[1] % ApkAligner.DEFAULT_ALIGNMENT);
+    }
+
+    @Test
+    public void alignedArchiveReadsBackUnchanged() throws IOException {
+        Map<String, byte[]> entries = entries();
+        File apk = new File(mDir, "app.apk");
+        write(apk, entries, false);
+        ApkAligner.main(new String[]{apk.getPath()});
+        assertFalse(new File(apk.getPath() + ".aligned").exists());
+
+        ZipFile zip = new ZipFile(apk);
+        try {
+            assertEquals(entries.size() + 1, zip.size());
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                ZipEntry zipEntry = zip.getEntry(entry.getKey());
+                assertNotNull(entry.getKey(), zipEntry);
+                assertArrayEquals(entry.getKey(), entry.getValue(), readFully(zip.getInputStream(zipEntry)));
+            }
+            assertTrue(zip.getEntry("res/raw/").isDirectory());
+        } finally {
+            zip.close();
+        }
+
+        // The local headers are rewritten, so read them too and not just the central directory
+        ZipInputStream in = new ZipInputStream(new FileInputStream(apk));
+        try {
+            int count = 0;
+            for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                if (entry.isDirectory()) continue;
+                assertArrayEquals(entry.getName(), entries.get(entry.getName()), readFully(in, false));
+                count++;
+            }
+            assertEquals(entries.size(), count);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void signedArchiveStillVerifies() throws Exception {
+        Map<String, byte[]> entries = entries();
+        File apk = new File(mDir, "app.apk");
+        write(apk, entries, true);
+        sign(apk);
+        ApkAligner.main(new String[]{apk.getPath()});
+
+        JarFile jar = new JarFile(apk, true);
+        try {
+            int signed = 0;
+            Enumeration<JarEntry> e = jar.entries();
+            while (e.hasMoreElements()) {
+                JarEntry entry = e.nextElement();
+                // A digest mismatch throws a SecurityException while the entry is read to the end
+                byte[] content = readFully(jar.getInputStream(entry));
+                if (entry.isDirectory() || entry.getName().startsWith("META-INF/")) continue;
+                assertArrayEquals(entry.getName(), entries.get(entry.getName()), content);
+                assertNotNull(entry.getName(), entry.getCodeSigners());
+                signed++;
+            }
+            assertEquals(entries.size(), signed);
+        } finally {
+            jar.close();
+        }
+        assertEquals(0, layout(readFully(new FileInputStream(apk))).get("res/raw/sound.ogg")[1] %
+                ApkAligner.PAGE_ALIGNMENT);
+    }
+
+    private static Map<String, byte[]> entries() {
+        Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+        int seed = 1;
+        for (String name : SERVABLE) entries.put(name, content(seed++, 3000 + seed * 517));
+        for (String name : OTHER) entries.put(name, content(seed++, 1000 + seed * 211));
+        return entries;
+    }
+
+    // Repetitive enough for the packager to deflate it, like most resources
+    private static byte[] content(int seed, int length) {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) content[i] = (byte) (seed * 31 + i / 7);
+        return content;
+    }
+
+    /**
+     * Writes the entries deflated with data descriptors, as the packager does, except the fonts which are stored,
+     * and a directory entry. Signed archives get a manifest first so jarsigner can add to it.
+     */
+    private static byte[] write(File file, Map<String, byte[]> entries, boolean jar) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(bytes);
+        if (jar) {
+            zip.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+            zip.write("Manifest-Version: 1.0\r\n\r\n".getBytes("UTF-8"));
+        }
+        ZipEntry directory = new ZipEntry("res/raw/");
+        directory.setMethod(ZipEntry.STORED);
+        directory.setSize(0);
+        directory.setCrc(0);
+        zip.putNextEntry(directory);
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            ZipEntry zipEntry = new ZipEntry(entry.getKey());
+            if (entry.getKey().endsWith(".ttf")) {
+                CRC32 crc = new CRC32();
+                crc.update(entry.getValue());
+                zipEntry.setMethod(ZipEntry.STORED);
+                zipEntry.setSize(entry.getValue().length);
+                zipEntry.setCrc(crc.getValue());
+            }
+            zip.putNextEntry(zipEntry);
+            zip.write(entry.getValue());
+        }
+        zip.close();
+        OutputStream os = new FileOutputStream(file);
+        try {
+            os.write(bytes.toByteArray());
+        } finally {
+            os.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Signs the archive in place with a throwaway key, using the JDK's own keytool and jarsigner.
+     */
+    private void sign(File apk) throws Exception {
+        File keystore = new File(mDir, "test.keystore");
+        run(tool("keytool"), "-genkeypair", "-keystore", keystore.getPath(), "-storepass", "android",
+                "-keypass", "android", "-alias", "test", "-keyalg", "RSA", "-keysize", "2048", "-validity", "1",
+                "-dname", "CN=Test");
+        run(tool("jarsigner"), "-keystore", keystore.getPath(), "-storepass", "android", "-keypass", "android",
+                apk.getPath(), "test");
+    }
+
+    private static String tool(String name) {
+        File home = new File(System.getProperty("java.home"));
+        // java.home is the JRE inside the JDK up to Java 8
+        for (File dir : new File[]{new File(home, "bin"), new File(home.getParentFile(), "bin")}) {
+            File tool = new File(dir, name);
+            if (tool.isFile()) return tool.getPath();
+        }
+        return name;
+    }
+
+    private static void run(String... command) throws Exception {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String output = new String(readFully(process.getInputStream()), "UTF-8");
+        assertEquals(output, 0, process.waitFor());
+    }
+
+    /**
+     * Gets the compression method and data offset of every entry, from the central directory and local headers.
+     */
+    private static Map<String, int[]> layout(byte[] zip) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(zip).order(ByteOrder.LITTLE_ENDIAN);
+        int end = zip.length - 22;
+        while (in.getInt(end) != 0x06054b50) end--;
+        Map<String, int[]> layout = new LinkedHashMap<String, int[]>();
+        int at = in.getInt(end + 16);
+        for (int i = 0; i < (in.getShort(end + 10) & 0xffff); i++) {
+            int nameLength = in.getShort(at + 28) & 0xffff;
+            String name = new String(zip, at + 46, nameLength, "UTF-8");
+            int local = in.getInt(at + 42);
+            assertEquals(name, 0x04034b50, in.getInt(local));
+            int dataOffset = local + 30 + nameLength + (in.getShort(local + 28) & 0xffff);
+            layout.put(name, new int[]{in.getShort(at + 10) & 0xffff, dataOffset});
+            at += 46 + nameLength + (in.getShort(at + 30) & 0xffff) + (in.getShort(at + 32) & 0xffff);
+        }
+        return layout;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        return readFully(in, true);
+    }
+
+    private static byte[] readFully(InputStream in, boolean close) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) out.write(buffer, 0, n);
+            return out.toByteArray();
+        } finally {
+            if (close) in.close();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.theNemos.shadowPack.build;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compiles a small appfilter.xml and reads the table back at the offsets ComponentIconResolver reads on the device.
+ */
+public class AppFilterCompilerTest {
+
+    private File mDir;
+    private final Map<String, Integer> mIds = new HashMap<String, Integer>();
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = Files.createTempDirectory("appfilter").toFile();
+        // The drawables the items below map to, with ids as aapt would assign them
+        mIds.put("browser", 0x7f020000);
+        mIds.put("camera", 0x7f020001);
+        mIds.put("mail", 0x7f020002);
+    }
+
+    @After
+    public void tearDown() {
+        delete(mDir);
+    }
+
+    @Test
+    public void normalisesComponentKeys() {
+        assertEquals("com.a/com.a.Main", AppFilterCompiler.componentKey("ComponentInfo{com.a/.Main}"));
+        assertEquals("com.a/com.b.Main", AppFilterCompiler.componentKey(" com.a/com.b.Main "));
+        assertEquals(null, AppFilterCompiler.componentKey("ComponentInfo{com.a}"));
+        assertEquals(null, AppFilterCompiler.componentKey("com.a/"));
+    }
+
+    @Test
+    public void resolvesEveryMappedComponent() throws IOException {
+        ByteBuffer table = compile(
+                "<item component=\"ComponentInfo{com.android.browser/.Browser}\" drawable=\"browser\" />\n" +
+                "<item component=\"ComponentInfo{com.android.camera/com.android.camera.Camera}\" drawable=\"camera\" />\n" +
+                "<item component=\"ComponentInfo{com.android.email/.Mail}\" drawable=\"mail\" />\n");
+        assertEquals(AppFilterCompiler.MAGIC, table.getInt(0));
+        assertEquals(AppFilterCompiler.VERSION, table.getInt(4));
+        assertEquals(3, table.getInt(8));
+        assertEquals(mIds.get("browser").intValue(), resolve(table, "com.android.browser/com.android.browser.Browser"));
+        assertEquals(mIds.get("camera").intValue(), resolve(table, "com.android.camera/com.android.camera.Camera"));
+        assertEquals(mIds.get("mail").intValue(), resolve(table, "com.android.email/com.android.email.Mail"));
+        assertEquals(0, resolve(table, "com.android.email/com.android.email.Compose"));
+
+        // ComponentIconResolver binary searches the entries by hash
+        int previous = Integer.MIN_VALUE;
+        for (int i = 0; i < table.getInt(8); i++) {
+            int hash = table.getInt(table.getInt(24) + i * AppFilterCompiler.ENTRY_SIZE);
+            assertTrue(hash >= previous);
+            previous = hash;
+        }
+    }
+
+    @Test
+    public void setsBloomBitsAndPackagesOfEveryEntry() throws IOException {
+        ByteBuffer table = compile(
+                "<item component=\"ComponentInfo{com.a/.A}\" drawable=\"browser\" />\n" +
+                "<item component=\"ComponentInfo{com.a/.B}\" drawable=\"camera\" />\n" +
+                "<item component=\"ComponentInfo{com.b/.A}\" drawable=\"mail\" />\n");
+        for (String key : new String[]{"com.a/com.a.A", "com.a/com.a.B", "com.b/com.b.A"}) {
+            assertTrue(key, mightContain(table, key));
+        }
+        int packages = table.getInt(20);
+        assertEquals(2, packages);
+        int previous = Integer.MIN_VALUE;
+        for (int i = 0; i < packages; i++) {
+            int hash = table.getInt(table.getInt(32) + i * 4);
+            assertTrue(hash > previous);
+            previous = hash;
+        }
+    }
+
+    @Test
+    public void skipsMalformedMissingAndDuplicateItems() throws IOException {
+        ByteBuffer table = compile(
+                "<item component=\"ComponentInfo{com.a}\" drawable=\"browser\" />\n" +
+                "<item component=\"ComponentInfo{com.a/.A}\" drawable=\"nothing\" />\n" +
+                "<item component=\"ComponentInfo{com.b/.B}\" drawable=\"camera\" />\n" +
+                "<item component=\"ComponentInfo{com.b/.B}\" drawable=\"mail\" />\n");
+        assertEquals(1, table.getInt(8));
+        assertEquals(mIds.get("camera").intValue(), resolve(table, "com.b/com.b.B"));
+    }
+
+    private ByteBuffer compile(String items) throws IOException {
+        File appfilter = new File(mDir, "res/xml/appfilter.xml");
+        appfilter.getParentFile().mkdirs();
+        OutputStream os = new FileOutputStream(appfilter);
+        try {
+            os.write(("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<resources>\n" + items + "</resources>\n")
+                    .getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+        File out = new File(mDir, "assets/appfilter.bin");
+        AppFilterCompiler.compile(appfilter, mIds, out);
+        return ByteBuffer.wrap(Files.readAllBytes(out.toPath()));
+    }
+
+    private static boolean mightContain(ByteBuffer table, String key) {
+        int mask = (1 << table.getInt(12)) - 1;
+        int hash = key.hashCode();
+        int fnv = AppFilterCompiler.fnv1a(key);
+        for (int n = 0; n < table.getInt(16); n++) {
+            int bit = (hash + n * fnv) & mask;
+            if ((table.get(table.getInt(28) + (bit >>> 3)) & (1 << (bit & 7))) == 0) return false;
+        }
+        return true;
+    }
+
+    // Looks a component up the way ComponentIconResolver does: by hash, then comparing the stored key
+    private static int resolve(ByteBuffer table, String key) throws IOException {
+        if (!mightContain(table, key)) return 0;
+        int hash = key.hashCode();
+        for (int i = 0; i < table.getInt(8); i++) {
+            int entry = table.getInt(24) + i * AppFilterCompiler.ENTRY_SIZE;
+            if (table.getInt(entry) != hash) continue;
+            byte[] stored = new byte[table.getShort(entry + 12)];
+            int offset = table.getInt(36) + table.getInt(entry + 8);
+            for (int j = 0; j < stored.length; j++) stored[j] = table.get(offset + j);
+            if (new String(stored, "UTF-8").equals(key)) return table.getInt(entry + 4);
+        }
+        return 0;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) delete(child);
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,176 @@
+package com.theNemos.shadowPack.build;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Packs the atlases of a small pack and reads the table back at the offsets IconAtlas reads on the device. The pack
+ * has two categories, apps listed by an array and games matched by name prefix, of solid colour icons whose sizes
+ * differ so the cells have to fit the largest.
+ */
+public class IconAtlasGeneratorTest {
+
+    private static final String[] APPS = {"browser", "camera", "mail"};
+    private static final String[] GAMES = {"game_chess", "game_puzzle"};
+    private static final int APP_COLOUR = 0xff102030;
+    private static final int GAME_COLOUR = 0xff405060;
+
+    private File mDir;
+    private File mAssets;
+    private final Map<String, Integer> mIds = new HashMap<String, Integer>();
+    private ByteBuffer mTable;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = Files.createTempDirectory("atlas").toFile();
+        File res = new File(mDir, "res");
+        for (int i = 0; i < APPS.length; i++) writeIcon(res, APPS[i], 48 + i, APP_COLOUR + i);
+        for (int i = 0; i < GAMES.length; i++) writeIcon(res, GAMES[i], 40, GAME_COLOUR + i);
+        writeCategories(res);
+        // Listed out of id order, the table still has to come out sorted
+        mIds.put("mail", 0x7f020000);
+        mIds.put("game_puzzle", 0x7f020001);
+        mIds.put("browser", 0x7f020002);
+        mIds.put("game_chess", 0x7f020003);
+        mIds.put("camera", 0x7f020004);
+
+        mAssets = new File(mDir, "assets");
+        IconAtlasGenerator.generate(new IconPackSource(res), mIds, mAssets);
+        mTable = ByteBuffer.wrap(Files.readAllBytes(new File(mAssets, "icon_atlas.bin").toPath()));
+    }
+
+    @After
+    public void tearDown() {
+        delete(mDir);
+    }
+
+    @Test
+    public void writesHeaderAndCategories() {
+        assertEquals(IconAtlasGenerator.MAGIC, mTable.getInt(0));
+        assertEquals(IconAtlasGenerator.VERSION, mTable.getInt(4));
+        assertEquals(50, mTable.getInt(8));
+        assertEquals(2, mTable.getInt(12));
+        assertEquals(0, mTable.getInt(category(0)));
+        assertEquals(APPS.length, mTable.getInt(category(0) + 4));
+        assertEquals(1, mTable.getInt(category(0) + 8));
+        assertEquals(APPS.length, mTable.getInt(category(1)));
+        assertEquals(GAMES.length, mTable.getInt(category(1) + 4));
+    }
+
+    @Test
+    public void sortsEntriesByIdWithinEachCategory() {
+        for (int c = 0; c < 2; c++) {
+            int previous = Integer.MIN_VALUE;
+            for (int i = 0; i < mTable.getInt(category(c) + 4); i++) {
+                int resId = mTable.getInt(entry(mTable.getInt(category(c)) + i));
+                assertTrue(resId > previous);
+                previous = resId;
+            }
+        }
+    }
+
+    @Test
+    public void drawsEveryIconWhereTheTableSays() throws IOException {
+        checkIcons(0, APPS, APP_COLOUR);
+        checkIcons(1, GAMES, GAME_COLOUR);
+    }
+
+    private void checkIcons(int category, String[] names, int firstColour) throws IOException {
+        for (int i = 0; i < names.length; i++) {
+            int entry = find(category, mIds.get(names[i]));
+            assertTrue(names[i], entry >= 0);
+            int at = entry(entry);
+            File file = new File(mAssets, "atlas/" + category + "_" + mTable.getShort(at + 4) + ".png");
+            BufferedImage atlas = ImageIO.read(file);
+            assertNotNull(file.getPath(), atlas);
+            int x = mTable.getShort(at + 6);
+            int y = mTable.getShort(at + 8);
+            int width = mTable.getShort(at + 10);
+            int height = mTable.getShort(at + 12);
+            assertTrue(x + width <= atlas.getWidth() && y + height <= atlas.getHeight());
+            assertEquals(names[i], firstColour + i, atlas.getRGB(x + width / 2, y + height / 2));
+        }
+    }
+
+    // The same binary search as IconAtlas#find
+    private int find(int category, int resId) {
+        int first = mTable.getInt(category(category));
+        int low = first;
+        int high = first + mTable.getInt(category(category) + 4) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midId = mTable.getInt(entry(mid));
+            if (midId < resId) {
+                low = mid + 1;
+            } else if (midId > resId) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int category(int category) {
+        return mTable.getInt(16) + category * IconAtlasGenerator.CATEGORY_SIZE;
+    }
+
+    private int entry(int entry) {
+        return mTable.getInt(20) + entry * IconAtlasGenerator.ENTRY_SIZE;
+    }
+
+    private static void writeIcon(File res, String name, int size, int argb) throws IOException {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) image.setRGB(x, y, argb);
+        }
+        File dir = new File(res, "drawable-xxhdpi");
+        dir.mkdirs();
+        ImageIO.write(image, "png", new File(dir, name + ".png"));
+    }
+
+    private static void writeCategories(File res) throws IOException {
+        File values = new File(res, "values");
+        values.mkdirs();
+        OutputStream os = new FileOutputStream(new File(values, "icon_categories.xml"));
+        try {
+            os.write(("<resources>\n" +
+                    "<string-array name=\"icon_category_keys\"><item>apps</item><item>games</item></string-array>\n" +
+                    "<string-array name=\"icon_category_titles\"><item>Apps</item><item>Games</item></string-array>\n" +
+                    "<string-array name=\"icon_category_arrays\"><item>icons_apps</item><item>icons_games</item>" +
+                    "</string-array>\n" +
+                    "<string-array name=\"icon_category_prefixes\"><item></item><item>game_</item></string-array>\n" +
+                    "<string-array name=\"icons_apps\"><item>mail</item><item>browser</item><item>camera</item>" +
+                    "</string-array>\n" +
+                    "<string-array name=\"icons_games\"></string-array>\n" +
+                    "</resources>\n").getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) delete(child);
+        }
+        file.delete();
+    }
+}
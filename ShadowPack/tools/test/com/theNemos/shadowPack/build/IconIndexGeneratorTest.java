@@ -0,0 +1,230 @@
+package com.theNemos.shadowPack.build;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Writes an index for a small pack and reads it back at the offsets IconIndex reads on the device. The pack has
+ * three apps, listed by an array and shipped in two densities, and two games matched by name prefix.
+ */
+public class IconIndexGeneratorTest {
+
+    private static final String[] APPS = {"browser", "camera", "mail"};
+    private static final String[] GAMES = {"game_chess", "game_puzzle"};
+
+    private File mDir;
+    private File mRes;
+    private final Map<String, Integer> mIds = new LinkedHashMap<String, Integer>();
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = Files.createTempDirectory("iconindex").toFile();
+        mRes = new File(mDir, "res");
+        for (int i = 0; i < APPS.length; i++) {
+            writeIcon(mRes, "drawable-xxhdpi", APPS[i], 48 + i, true);
+            writeIcon(mRes, "drawable-mdpi", APPS[i], 16, true);
+        }
+        for (String game : GAMES) writeIcon(mRes, "drawable-xxhdpi", game, 40, true);
+        writeCategories(mRes);
+        // In name order from the first drawable id, as aapt assigns them
+        int id = 0x7f020000;
+        for (String name : new String[]{"browser", "camera", "game_chess", "game_puzzle", "mail"}) {
+            mIds.put(name, id++);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        delete(mDir);
+    }
+
+    @Test
+    public void writesHeader() throws IOException {
+        ByteBuffer index = generate();
+        assertEquals(IconIndexGenerator.MAGIC, index.getInt(0));
+        assertEquals(IconIndexGenerator.VERSION, index.getInt(4));
+        assertEquals(5, index.getInt(8));
+        assertEquals(2, index.getInt(12));
+        assertEquals(IconIndexGenerator.HEADER_SIZE, index.getInt(16));
+        assertEquals(index.capacity(), index.getInt(24) + index.getInt(28));
+    }
+
+    @Test
+    public void findsEveryIconByName() throws IOException {
+        ByteBuffer index = generate();
+        for (Map.Entry<String, Integer> icon : mIds.entrySet()) {
+            int position = find(index, icon.getKey());
+            assertTrue(icon.getKey(), position >= 0);
+            assertEquals(icon.getValue().intValue(), index.getInt(entry(index, position) + 4));
+            assertEquals(icon.getKey(), getName(index, position));
+        }
+        assertEquals(-1, find(index, "missing"));
+    }
+
+    @Test
+    public void recordsCategoriesAndLargestSizes() throws IOException {
+        ByteBuffer index = generate();
+        int mail = entry(index, find(index, "mail"));
+        assertEquals(1, index.getInt(mail + 8));
+        assertEquals(50, index.getShort(mail + 12));
+        assertEquals(50, index.getShort(mail + 14));
+
+        int chess = entry(index, find(index, "game_chess"));
+        assertEquals(2, index.getInt(chess + 8));
+        assertEquals(40, index.getShort(chess + 12));
+    }
+
+    @Test
+    public void flagsIconsOpaqueInEveryDensity() throws IOException {
+        // One transparent pixel in any density is enough to keep the alpha channel
+        writeIcon(mRes, "drawable-xxhdpi", "mail", 50, false);
+        writeIcon(mRes, "drawable-mdpi", "browser", 16, false);
+        ByteBuffer index = generate();
+        assertEquals(0, flags(index, "mail") & IconIndexGenerator.FLAG_OPAQUE);
+        assertEquals(0, flags(index, "browser") & IconIndexGenerator.FLAG_OPAQUE);
+        assertEquals(IconIndexGenerator.FLAG_OPAQUE, flags(index, "camera") & IconIndexGenerator.FLAG_OPAQUE);
+        assertEquals(IconIndexGenerator.FLAG_OPAQUE, flags(index, "game_chess") & IconIndexGenerator.FLAG_OPAQUE);
+    }
+
+    @Test
+    public void sortsNameAndIdOrders() throws IOException {
+        ByteBuffer index = generate();
+        int count = index.getInt(8);
+        String previousName = "";
+        int previousId = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            String name = getName(index, index.getInt(index.getInt(20) + i * 4));
+            assertTrue(name, name.compareTo(previousName) > 0);
+            previousName = name;
+            int id = index.getInt(entry(index, index.getInt(index.getInt(32) + i * 4)) + 4);
+            assertTrue(id > previousId);
+            previousId = id;
+        }
+    }
+
+    @Test
+    public void contentHashFollowsEveryDensity() throws IOException {
+        ByteBuffer before = generate();
+        writeIcon(mRes, "drawable-mdpi", "camera", 16, false);
+        ByteBuffer after = generate();
+        assertNotEquals(contentHash(before, "camera"), contentHash(after, "camera"));
+        assertEquals(contentHash(before, "browser"), contentHash(after, "browser"));
+        assertNotEquals(0, contentHash(after, "browser"));
+    }
+
+    @Test
+    public void leavesOutIconsMissingFromRJava() throws IOException {
+        mIds.remove("camera");
+        ByteBuffer index = generate();
+        assertEquals(4, index.getInt(8));
+        assertEquals(-1, find(index, "camera"));
+        assertFalse(find(index, "browser") < 0);
+    }
+
+    private ByteBuffer generate() throws IOException {
+        File out = new File(mDir, "assets/icon_index.bin");
+        IconIndexGenerator.generate(new IconPackSource(mRes), mIds, out);
+        return ByteBuffer.wrap(Files.readAllBytes(out.toPath()));
+    }
+
+    private static int contentHash(ByteBuffer index, String name) {
+        return index.getInt(entry(index, find(index, name)) + 24);
+    }
+
+    private static int flags(ByteBuffer index, String name) {
+        return index.getShort(entry(index, find(index, name)) + 22);
+    }
+
+    private static int entry(ByteBuffer index, int position) {
+        return index.getInt(16) + position * IconIndexGenerator.ENTRY_SIZE;
+    }
+
+    private static String getName(ByteBuffer index, int position) {
+        int entry = entry(index, position);
+        byte[] name = new byte[index.getShort(entry + 20)];
+        for (int i = 0; i < name.length; i++) name[i] = index.get(index.getInt(24) + index.getInt(entry + 16) + i);
+        return new String(name);
+    }
+
+    // The same binary search over name hashes as IconIndex#find
+    private static int find(ByteBuffer index, String name) {
+        int hash = name.hashCode();
+        int low = 0;
+        int high = index.getInt(8) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midHash = index.getInt(entry(index, mid));
+            if (midHash < hash) {
+                low = mid + 1;
+            } else if (midHash > hash) {
+                high = mid - 1;
+            } else {
+                int i = mid;
+                while (i > 0 && index.getInt(entry(index, i - 1)) == hash) i--;
+                for (; i < index.getInt(8) && index.getInt(entry(index, i)) == hash; i++) {
+                    if (getName(index, i).equals(name)) return i;
+                }
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static void writeIcon(File res, String folder, String name, int size, boolean opaque)
+            throws IOException {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) image.setRGB(x, y, 0xff102030);
+        }
+        if (!opaque) image.setRGB(0, 0, 0);
+        File dir = new File(res, folder);
+        dir.mkdirs();
+        ImageIO.write(image, "png", new File(dir, name + ".png"));
+    }
+
+    private static void writeCategories(File res) throws IOException {
+        File values = new File(res, "values");
+        values.mkdirs();
+        OutputStream os = new FileOutputStream(new File(values, "icon_categories.xml"));
+        try {
+            os.write(("<resources>\n" +
+                    "<string-array name=\"icon_category_keys\"><item>apps</item><item>games</item></string-array>\n" +
+                    "<string-array name=\"icon_category_titles\"><item>Apps</item><item>Games</item></string-array>\n" +
+                    "<string-array name=\"icon_category_arrays\"><item>icons_apps</item><item>icons_games</item>" +
+                    "</string-array>\n" +
+                    "<string-array name=\"icon_category_prefixes\"><item></item><item>game_</item></string-array>\n" +
+                    "<string-array name=\"icons_apps\"><item>mail</item><item>browser</item><item>camera</item>" +
+                    "</string-array>\n" +
+                    "<string-array name=\"icons_games\"></string-array>\n" +
+                    "</resources>\n").getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) delete(child);
+        }
+        file.delete();
+    }
+}